@@ -1,28 +1,37 @@
 package com.example.demo;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.scheduling.annotation.EnableScheduling;
 
 import com.example.demo.repo.FirestoreTestRepository;
 
-@EnableScheduling
+import java.util.Arrays;
+
 @SpringBootApplication
 public class LostFoundMatcherApplication implements CommandLineRunner {
 
   private final FirestoreTestRepository testRepo;
 
+  // Diagnostic Firestore read on boot; disable (e.g. with the "fast" profile) for quick restarts
+  @Value("${app.startup.print-latest-items:true}")
+  private boolean printLatestItems;
+
   public LostFoundMatcherApplication(FirestoreTestRepository testRepo) {
     this.testRepo = testRepo;
   }
 
   public static void main(String[] args) {
-    SpringApplication.run(LostFoundMatcherApplication.class, args);
+    SpringApplication app = new SpringApplication(LostFoundMatcherApplication.class);
+    // a backfill is a one-off batch process: no web server, no scheduled jobs (application-backfill.yml)
+    if (Arrays.asList(args).contains("--backfill")) app.setAdditionalProfiles("backfill");
+    app.run(args);
   }
 
   @Override
   public void run(String... args) throws Exception {
+    if (!printLatestItems) return;
     try {
       testRepo.printLatestItems(5);
     } catch (Exception e) {
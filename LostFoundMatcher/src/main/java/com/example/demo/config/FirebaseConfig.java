@@ -10,10 +10,16 @@ import com.google.firebase.database.FirebaseDatabase;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 
+/**
+ * Firebase clients are {@code @Lazy}: they are built on first use rather than during context
+ * refresh, so startup (and CDS/AOT training runs) doesn't wait on credential loading or need
+ * credentials at all. Consumers inject them through {@code ObjectProvider}.
+ */
 @Configuration
 public class FirebaseConfig {
 
@@ -28,6 +34,7 @@ public class FirebaseConfig {
   private String databaseUrl;
 
   @Bean
+  @Lazy
   public FirebaseApp firebaseApp() throws Exception {
     FirebaseOptions.Builder builder = FirebaseOptions.builder();
     GoogleCredentials credentials;
@@ -56,16 +63,19 @@ public class FirebaseConfig {
   }
 
   @Bean
+  @Lazy
   public Firestore firestore(FirebaseApp app) {
     return FirestoreClient.getFirestore(app);
   }
 
   @Bean
+  @Lazy
   public FirebaseMessaging firebaseMessaging(FirebaseApp app) {
     return FirebaseMessaging.getInstance(app);
   }
 
   @Bean
+  @Lazy
   public FirebaseDatabase firebaseDatabase(FirebaseApp app) {
     // Using the app that already has databaseUrl configured
     FirebaseDatabase db = FirebaseDatabase.getInstance(app);
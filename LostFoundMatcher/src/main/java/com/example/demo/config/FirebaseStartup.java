@@ -0,0 +1,163 @@
+package com.example.demo.config;
+
+import com.google.cloud.firestore.Firestore;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the (lazy) Firebase clients in the background as soon as the context is refreshed, in
+ * parallel with the rest of startup, and then starts the registered listeners once the app is ready.
+ * Both steps retry with exponential backoff, so bad credentials or a Firestore outage at boot delay
+ * the listeners instead of leaving them dead.
+ *
+ * Firestore stops a snapshot listener for good after an error; listeners hand themselves back with
+ * {@link #restart} and are re-attached on the same backoff.
+ *
+ * {@link #isReady()} is false until the client is built and every registered listener has started
+ * (and while one is waiting to be re-attached); it backs the readiness probe in OpsController.
+ */
+@Component
+public class FirebaseStartup {
+
+    private static final Logger log = LoggerFactory.getLogger(FirebaseStartup.class);
+
+    private static final long INITIAL_BACKOFF_MILLIS = 1_000;
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+
+    /**
+     * Attaches a listener to Firestore; throwing schedules another attempt.
+     */
+    @FunctionalInterface
+    public interface Task {
+        void start(Firestore db) throws Exception;
+    }
+
+    private final ObjectProvider<Firestore> dbProvider;
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "firebase-startup"));
+    private final Map<String, Task> tasks = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> started = new ConcurrentHashMap<>();
+    // delay before the next restart of each listener; doubles per restart until it recovers
+    private final Map<String, Long> restartBackoff = new ConcurrentHashMap<>();
+
+    private volatile Firestore db;
+    private volatile boolean appReady = false;
+    private boolean connecting = false;
+
+    public FirebaseStartup(ObjectProvider<Firestore> dbProvider) {
+        this.dbProvider = dbProvider;
+    }
+
+    /**
+     * Registers a listener to start once the client is built and the app is ready. Call from a
+     * constructor so readiness accounts for it from the first probe.
+     */
+    public void register(String name, Task task) {
+        tasks.put(name, task);
+        started.put(name, false);
+    }
+
+    /**
+     * Re-attaches a listener that Firestore stopped with an error. It counts as not started until the
+     * new attach succeeds; repeated calls while a restart is pending are ignored.
+     */
+    public void restart(String name) {
+        Task task = tasks.get(name);
+        if (task == null || !started.replace(name, true, false)) return;
+        long delay = restartBackoff.merge(name, INITIAL_BACKOFF_MILLIS, (prev, initial) -> next(prev));
+        log.warn("{} stopped; re-attaching in {} ms", name, delay);
+        if (!scheduler.isShutdown()) {
+            scheduler.schedule(() -> start(name, task, INITIAL_BACKOFF_MILLIS, 1), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Called by a listener when it receives a snapshot; resets its restart backoff.
+     */
+    public void recovered(String name) {
+        restartBackoff.remove(name);
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public synchronized void connect() {
+        if (connecting) return;
+        connecting = true;
+        scheduler.execute(() -> connect(INITIAL_BACKOFF_MILLIS, 1));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        appReady = true;
+        // the tasks queue behind the connect attempt on the same thread, so db is set (or retrying) by then
+        tasks.forEach((name, task) -> scheduler.execute(() -> start(name, task, INITIAL_BACKOFF_MILLIS, 1)));
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public boolean isReady() {
+        return appReady && db != null && !started.containsValue(false);
+    }
+
+    /**
+     * Readiness details: whether the client is built and which listeners have started.
+     */
+    public Map<String, Boolean> status() {
+        Map<String, Boolean> status = new LinkedHashMap<>();
+        status.put("firestore", db != null);
+        status.putAll(started);
+        return status;
+    }
+
+    private void connect(long backoff, int attempt) {
+        try {
+            db = dbProvider.getObject();
+            log.info("Firebase clients ready after {} attempt(s)", attempt);
+        } catch (Exception e) {
+            retry("Firebase client init", e, attempt, backoff, () -> connect(next(backoff), attempt + 1));
+        }
+    }
+
+    private void start(String name, Task task, long backoff, int attempt) {
+        if (db == null) {
+            // still connecting; check again after the backoff without counting it as a failure
+            scheduler.schedule(() -> start(name, task, backoff, attempt), backoff, TimeUnit.MILLISECONDS);
+            return;
+        }
+        try {
+            task.start(db);
+            started.put(name, true);
+            log.info("{} started.", name);
+        } catch (Exception e) {
+            retry("Starting " + name, e, attempt, backoff, () -> start(name, task, next(backoff), attempt + 1));
+        }
+    }
+
+    private void retry(String what, Exception e, int attempt, long backoff, Runnable again) {
+        if (attempt == 1) {
+            log.error("{} failed; retrying in {} ms", what, backoff, e);
+        } else {
+            log.warn("{} failed (attempt {}): {}; retrying in {} ms", what, attempt, e.getMessage(), backoff);
+        }
+        if (!scheduler.isShutdown()) scheduler.schedule(again, backoff, TimeUnit.MILLISECONDS);
+    }
+
+    private static long next(long backoff) {
+        return Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+    }
+}
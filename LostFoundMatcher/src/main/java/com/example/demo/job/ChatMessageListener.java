@@ -1,12 +1,12 @@
 package com.example.demo.job;
 
+import com.example.demo.config.FirebaseStartup;
 import com.example.demo.service.ChatNotificationService;
-import com.google.api.core.ApiFutureCallback;
-import com.google.api.core.ApiFutures;
 import com.google.cloud.firestore.*;
-import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import com.google.cloud.Timestamp;
 import com.google.cloud.firestore.Transaction;
@@ -16,58 +16,122 @@ import com.google.cloud.firestore.DocumentSnapshot;
 
 import java.util.*;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
+/**
+ * Sends a push notification for every new chat message, in three bounded stages:
+ * ingest (one thread, receives snapshot callbacks in order) -> resolution (loads the conversation
+ * and writes the idempotency marker) -> delivery (FCM send). Resolution and delivery are split into
+ * lanes keyed by conversation id, so messages within a conversation stay in order while a slow FCM
+ * call only holds up the conversations sharing its lane. Queue depths and drops are exposed through
+ * {@link #queueStats()}.
+ *
+ * The overflow policy only applies at resolution, before the idempotency marker is written. Delivery
+ * always waits for room (pushing back on resolution), so a message that got its marker is never
+ * dropped while running. On shutdown the stages stop in pipeline order, each draining into the next,
+ * and a notification that still never reaches FCM (hand-off refused or discarded from the queue) has
+ * its marker deleted again, so it isn't recorded as delivered. The listener is
+ * attached through {@link FirebaseStartup}, which retries until it succeeds and re-attaches it after
+ * a listener error.
+ */
 @Component
 public class ChatMessageListener {
 
     private static final Logger log = LoggerFactory.getLogger(ChatMessageListener.class);
+    private static final String NAME = "ChatMessageListener";
+    // per stage, on shutdown
+    private static final long DRAIN_TIMEOUT_MILLIS = 10_000;
 
-    private final Firestore db;
+    private volatile Firestore db;
+    private final FirebaseStartup startup;
     private final ChatNotificationService chatNotifier;
     private ListenerRegistration registration;
-    private final Executor exec = Executors.newSingleThreadExecutor();
     private volatile boolean initialLoaded = false;
 
-    public ChatMessageListener(Firestore db, ChatNotificationService chatNotifier) {
-        this.db = db;
+    private final KeyedLanes ingest;
+    private final KeyedLanes resolution;
+    private final KeyedLanes delivery;
+    // Firestore hands snapshot callbacks to this; a full ingest queue blocks the listener thread
+    private final Executor exec;
+
+    public ChatMessageListener(FirebaseStartup startup,
+                               ChatNotificationService chatNotifier,
+                               @Value("${app.chat.resolution-lanes:0}") int resolutionLanes,
+                               @Value("${app.chat.delivery-lanes:0}") int deliveryLanes,
+                               @Value("${app.chat.queue-capacity:1000}") int queueCapacity,
+                               @Value("${app.chat.overflow-policy:BLOCK}") KeyedLanes.OverflowPolicy overflowPolicy,
+                               @Value("${app.chat.block-timeout-ms:5000}") long blockTimeoutMillis) {
+        this.startup = startup;
         this.chatNotifier = chatNotifier;
+        // both stages mostly wait on network calls, so default to a couple of lanes per core
+        int lanesDefault = Runtime.getRuntime().availableProcessors() * 2;
+        this.ingest = new KeyedLanes("chat-ingest", 1, queueCapacity, KeyedLanes.OverflowPolicy.BLOCK, Long.MAX_VALUE);
+        this.resolution = new KeyedLanes("chat-resolve", resolutionLanes > 0 ? resolutionLanes : lanesDefault,
+                queueCapacity, overflowPolicy, blockTimeoutMillis);
+        this.delivery = new KeyedLanes("chat-deliver", deliveryLanes > 0 ? deliveryLanes : lanesDefault,
+                queueCapacity, KeyedLanes.OverflowPolicy.BLOCK, Long.MAX_VALUE);
+        this.exec = task -> ingest.submit("ingest", task);
+        startup.register(NAME, this::start);
     }
 
-    @PostConstruct
-    public void start() {
-        try {
-            // Listen to newest messages; ensure index on createdAt if needed
-            Query q = db.collectionGroup("messages")
-                    .orderBy("createdAt", Query.Direction.DESCENDING)
-                    .limit(50);
-
-            registration = q.addSnapshotListener(exec, (snap, err) -> {
-                if (err != null) {
-                    log.error("Chat listener error", err);
-                    return;
-                }
-                if (snap == null) return;
+    @PreDestroy
+    public void stop() {
+        if (registration != null) registration.remove();
+        // upstream first, so each stage's last hand-offs land while the next one still takes work
+        ingest.shutdown(DRAIN_TIMEOUT_MILLIS);
+        resolution.shutdown(DRAIN_TIMEOUT_MILLIS);
+        delivery.shutdown(DRAIN_TIMEOUT_MILLIS);
+    }
 
-                // Skip the initial bootstrap batch to avoid re-sending recent messages
-                if (!initialLoaded) {
-                    initialLoaded = true;
-                    return;
-                }
+    /**
+     * Queue-depth gauges per stage: total queued tasks, deepest single lane, lane count and drops.
+     */
+    public Map<String, Map<String, Number>> queueStats() {
+        Map<String, Map<String, Number>> stats = new LinkedHashMap<>();
+        for (KeyedLanes lanes : List.of(ingest, resolution, delivery)) {
+            Map<String, Number> s = new LinkedHashMap<>();
+            s.put("queued", lanes.queueDepth());
+            s.put("maxLaneQueued", lanes.maxLaneDepth());
+            s.put("lanes", lanes.laneCount());
+            s.put("dropped", lanes.dropped());
+            stats.put(lanes == ingest ? "ingest" : lanes == resolution ? "resolution" : "delivery", s);
+        }
+        return stats;
+    }
 
-                List<DocumentChange> changes = snap.getDocumentChanges();
-                if (changes == null || changes.isEmpty()) return;
+    private void start(Firestore firestore) {
+        db = firestore;
+        if (registration != null) registration.remove();
 
-                for (DocumentChange dc : changes) {
-                    if (dc.getType() != DocumentChange.Type.ADDED) continue;
-                    handleAdded(dc.getDocument());
-                }
-            });
+        // Listen to newest messages; ensure index on createdAt if needed
+        Query q = db.collectionGroup("messages")
+                .orderBy("createdAt", Query.Direction.DESCENDING)
+                .limit(50);
 
-            log.info("ChatMessageListener started.");
-        } catch (Exception e) {
-            log.error("Failed to start ChatMessageListener", e);
-        }
+        registration = q.addSnapshotListener(exec, (snap, err) -> {
+            if (err != null) {
+                log.error("Chat listener error", err);
+                startup.restart(NAME);
+                return;
+            }
+            if (snap == null) return;
+            startup.recovered(NAME);
+
+            // Skip the initial bootstrap batch at boot to avoid re-sending recent messages. After a
+            // re-attach the batch is processed: it catches messages sent while the listener was down,
+            // and the delivery markers keep already-notified ones from being sent twice.
+            if (!initialLoaded) {
+                initialLoaded = true;
+                return;
+            }
+
+            List<DocumentChange> changes = snap.getDocumentChanges();
+            if (changes == null || changes.isEmpty()) return;
+
+            for (DocumentChange dc : changes) {
+                if (dc.getType() != DocumentChange.Type.ADDED) continue;
+                handleAdded(dc.getDocument());
+            }
+        });
     }
 
     private void handleAdded(DocumentSnapshot msgDoc) {
@@ -83,37 +147,30 @@ public class ChatMessageListener {
         DocumentReference convRef = msgDoc.getReference().getParent().getParent();
         if (convRef == null) return;
 
-        ApiFutures.addCallback(
-                convRef.get(),
-                new ApiFutureCallback<DocumentSnapshot>() {
-                    @Override
-                    public void onSuccess(DocumentSnapshot conv) {
-                        try {
-                            if (!conv.exists()) return;
-                            Map<String, Object> cd = conv.getData();
-                            if (cd == null) return;
-
-                            List<String> participants = toStringList(cd.get("participants"));
-                            if (participants.size() != 2) return;
-                            String itemId = str(cd.get("itemId"));
-                            String cid = conv.getId();
-
-                            String toUid = participants.get(0).equals(senderUid) ? participants.get(1) : participants.get(0);
-                            if (toUid == null || toUid.isBlank() || toUid.equals(senderUid)) return;
-
-                            processNotificationIfEligible(msgDoc, conv, toUid, cid, itemId, body);
-                        } catch (Exception e) {
-                            log.error("Chat notification processing failed", e);
-                        }
-                    }
-
-                    @Override
-                    public void onFailure(Throwable t) {
-                        log.error("Failed to load conversation", t);
-                    }
-                },
-                exec
-        );
+        String cid = convRef.getId();
+        resolution.submit(cid, () -> resolve(msgDoc, convRef, senderUid, body));
+    }
+
+    // Runs on the conversation's resolution lane; blocking here keeps the conversation's messages in order
+    private void resolve(DocumentSnapshot msgDoc, DocumentReference convRef, String senderUid, String body) {
+        try {
+            DocumentSnapshot conv = convRef.get().get();
+            if (!conv.exists()) return;
+            Map<String, Object> cd = conv.getData();
+            if (cd == null) return;
+
+            List<String> participants = toStringList(cd.get("participants"));
+            if (participants.size() != 2) return;
+            String itemId = str(cd.get("itemId"));
+            String cid = conv.getId();
+
+            String toUid = participants.get(0).equals(senderUid) ? participants.get(1) : participants.get(0);
+            if (toUid == null || toUid.isBlank() || toUid.equals(senderUid)) return;
+
+            processNotificationIfEligible(msgDoc, conv, toUid, cid, itemId, body);
+        } catch (Exception e) {
+            log.error("Chat notification processing failed", e);
+        }
     }
 
     /**
@@ -145,24 +202,38 @@ public class ChatMessageListener {
                 if (lastAt != null && msgAt != null && msgAt.compareTo(lastAt) < 0) {
                     return false;
                 }
-                Map<String, Object> delivery = new HashMap<>();
-                delivery.put("createdAt", FieldValue.serverTimestamp());
-                delivery.put("conversationId", cid);
-                delivery.put("recipientUid", toUid);
-                delivery.put("messageId", msgDoc.getId());
-                t.set(deliveryRef, delivery);
+                Map<String, Object> marker = new HashMap<>();
+                marker.put("createdAt", FieldValue.serverTimestamp());
+                marker.put("conversationId", cid);
+                marker.put("recipientUid", toUid);
+                marker.put("messageId", msgDoc.getId());
+                t.set(deliveryRef, marker);
                 return true;
             }).get();
 
             if (Boolean.TRUE.equals(shouldSend)) {
                 String title = "New message";
-                chatNotifier.sendChat(toUid, title, (body == null || body.isBlank()) ? "New message" : body, cid, itemId);
+                String text = (body == null || body.isBlank()) ? "New message" : body;
+                delivery.submit(cid, () -> chatNotifier.sendChat(toUid, title, text, cid, itemId),
+                        () -> forgetDelivery(deliveryRef));
             }
         } catch (Exception e) {
             log.error("processNotificationIfEligible failed", e);
         }
     }
 
+    // The notification never reached FCM, so don't leave the message recorded as delivered
+    private void forgetDelivery(DocumentReference deliveryRef) {
+        try {
+            deliveryRef.delete().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted deleting delivery marker {}", deliveryRef.getPath());
+        } catch (Exception e) {
+            log.error("Failed to delete delivery marker {}", deliveryRef.getPath(), e);
+        }
+    }
+
     private static String str(Object o) {
         return o == null ? "" : String.valueOf(o);
     }
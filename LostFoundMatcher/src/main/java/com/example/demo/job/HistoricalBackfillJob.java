@@ -0,0 +1,209 @@
+package com.example.demo.job;
+
+import com.example.demo.repo.FirestoreTestRepository;
+import com.example.demo.service.ItemMatchingService;
+import com.example.demo.service.MatchScoringService;
+import com.google.cloud.Timestamp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Re-matches the whole items collection, e.g. after tuning thresholds or adding station aliases.
+ *
+ * Run as a one-off command: {@code java -jar app.jar --backfill [--backfill.partition-hours=24]
+ * [--backfill.parallelism=4] [--backfill.reset]}. The timestamp range is split into fixed-size
+ * partitions which are scored in parallel on a fork/join pool (idle workers steal the remaining
+ * halves of busy ones). Each finished partition is checkpointed in system/backfill so an interrupted
+ * run resumes where it left off.
+ *
+ * {@code --backfill} activates the "backfill" profile: no web server and no scheduled jobs, so the
+ * process adds only its own scoring calls, paced by the app.scoring rate limits, to the live
+ * service's load.
+ *
+ * Only "lost" items are driven, since each lost item already visits its "found" candidates; this
+ * scores every pair once instead of twice.
+ */
+@Component
+public class HistoricalBackfillJob implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(HistoricalBackfillJob.class);
+
+    private static final int PAGE_SIZE = 200;
+    private static final long PROGRESS_INTERVAL_SECONDS = 30;
+
+    private final FirestoreTestRepository repo;
+    private final ItemMatchingService matcher;
+    private final MatchScoringService scoring;
+    private final ConfigurableApplicationContext context;
+
+    private final AtomicLong itemsScanned = new AtomicLong();
+    private final AtomicLong matchesStored = new AtomicLong();
+    private final AtomicLong partitionsDone = new AtomicLong();
+    private final AtomicLong partitionsFailed = new AtomicLong();
+
+    public HistoricalBackfillJob(FirestoreTestRepository repo,
+                                 ItemMatchingService matcher,
+                                 MatchScoringService scoring,
+                                 ConfigurableApplicationContext context) {
+        this.repo = repo;
+        this.matcher = matcher;
+        this.scoring = scoring;
+        this.context = context;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption("backfill")) return;
+
+        long partitionHours = longOption(args, "backfill.partition-hours", 24);
+        int parallelism = (int) longOption(args, "backfill.parallelism", 4);
+        boolean reset = args.containsOption("backfill.reset");
+
+        boolean ok;
+        try {
+            ok = backfill(TimeUnit.HOURS.toMillis(partitionHours), parallelism, reset);
+        } catch (Exception e) {
+            log.error("Backfill failed", e);
+            ok = false;
+        }
+        int exitCode = ok ? 0 : 1;
+        System.exit(SpringApplication.exit(context, () -> exitCode));
+    }
+
+    /**
+     * Returns true when every partition completed; failed partitions stay unchecked and are retried
+     * on the next run.
+     */
+    public boolean backfill(long partitionMillis, int parallelism, boolean reset) throws Exception {
+        if (partitionMillis <= 0) throw new IllegalArgumentException("Partition size must be positive");
+        Timestamp[] range = repo.getItemTimestampRange();
+        if (range == null) {
+            log.info("Backfill: no items to process");
+            return true;
+        }
+        long first = millis(range[0]) / partitionMillis * partitionMillis;
+        long last = millis(range[1]);
+
+        Set<Long> done = reset ? Set.of() : repo.getBackfillCheckpoint(partitionMillis);
+        if (done.isEmpty()) repo.resetBackfillCheckpoint(partitionMillis);
+
+        List<Long> todo = new ArrayList<>();
+        int total = 0;
+        for (long start = first; start <= last; start += partitionMillis) {
+            total++;
+            if (!done.contains(start)) todo.add(start);
+        }
+        log.info("Backfill: {} partitions of {}h, {} already done, parallelism {}",
+                total, TimeUnit.MILLISECONDS.toHours(partitionMillis), total - todo.size(), parallelism);
+        if (todo.isEmpty()) return true;
+
+        long startedAt = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor();
+        progress.scheduleAtFixedRate(() -> logProgress(todo.size(), startedAt),
+                PROGRESS_INTERVAL_SECONDS, PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        try {
+            pool.invoke(new PartitionTask(todo, 0, todo.size(), partitionMillis));
+        } finally {
+            progress.shutdownNow();
+            pool.shutdown();
+        }
+
+        logProgress(todo.size(), startedAt);
+        scoring.logPassRates();
+        return partitionsFailed.get() == 0;
+    }
+
+    private final class PartitionTask extends RecursiveAction {
+        private final List<Long> starts;
+        private final int lo;
+        private final int hi;
+        private final long partitionMillis;
+
+        PartitionTask(List<Long> starts, int lo, int hi, long partitionMillis) {
+            this.starts = starts;
+            this.lo = lo;
+            this.hi = hi;
+            this.partitionMillis = partitionMillis;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo == 1) {
+                processPartition(starts.get(lo), partitionMillis);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new PartitionTask(starts, lo, mid, partitionMillis),
+                    new PartitionTask(starts, mid, hi, partitionMillis));
+        }
+    }
+
+    private void processPartition(long start, long partitionMillis) {
+        Timestamp from = timestamp(start);
+        Timestamp to = timestamp(start + partitionMillis);
+        try {
+            Timestamp afterTs = null;
+            String afterId = null;
+            while (true) {
+                List<Map<String, Object>> page = repo.fetchItemsInRange(from, to, afterTs, afterId, PAGE_SIZE);
+                for (Map<String, Object> item : page) {
+                    itemsScanned.incrementAndGet();
+                    if (!"lost".equalsIgnoreCase(asString(item.get("type")))) continue;
+                    int stored = matcher.matchItem(item);
+                    if (stored > 0) matchesStored.addAndGet(stored);
+                }
+                if (page.size() < PAGE_SIZE) break;
+                Map<String, Object> lastItem = page.get(page.size() - 1);
+                afterTs = (Timestamp) lastItem.get("timestamp");
+                afterId = asString(lastItem.get("id"));
+            }
+            repo.markBackfillPartitionDone(start);
+            partitionsDone.incrementAndGet();
+        } catch (Exception e) {
+            partitionsFailed.incrementAndGet();
+            log.error("Backfill partition {} – {} failed; it will be retried on the next run", from, to, e);
+        }
+    }
+
+    private void logProgress(int partitions, long startedAt) {
+        double seconds = Math.max(1e-3, (System.nanoTime() - startedAt) / 1e9);
+        long scanned = itemsScanned.get();
+        log.info("Backfill progress: partitions {}/{} ({} failed), items {} ({} items/sec), new matches {}",
+                partitionsDone.get(), partitions, partitionsFailed.get(), scanned,
+                String.format("%.1f", scanned / seconds), matchesStored.get());
+    }
+
+    private static long longOption(ApplicationArguments args, String name, long def) {
+        List<String> values = args.getOptionValues(name);
+        if (values == null || values.isEmpty()) return def;
+        return Long.parseLong(values.get(0));
+    }
+
+    private static long millis(Timestamp ts) {
+        return ts.getSeconds() * 1000 + ts.getNanos() / 1_000_000;
+    }
+
+    private static Timestamp timestamp(long millis) {
+        return Timestamp.ofTimeMicroseconds(millis * 1000);
+    }
+
+    private String asString(Object o) {
+        return o == null ? "" : String.valueOf(o);
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.demo.job;
+
+import com.example.demo.repo.FirestoreTestRepository;
+import com.example.demo.service.TextPrefilterService;
+import com.google.cloud.Timestamp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the items collection (and so the candidate set) bounded by active inventory.
+ *
+ * 1. Resolve: claimed items (owner or admin) get a resolvedAt stamp. Items older than
+ *    {@code max-age-days} without one are stamped as expired: still-active ones are marked
+ *    "resolved", anything else (e.g. "flagged") keeps its status. Every item that is no longer active
+ *    therefore eventually gets a resolvedAt and leaves the collection. (Admin deletes remove the
+ *    document outright, so they need no stamp.)
+ * 2. Archive: items resolved more than {@code archive-after-days} ago are moved in batches to
+ *    items_archive, so findOppositeTypeItems no longer reads them at all. Owners can set an item
+ *    back to active during the grace period (and any edit of an expired item saves "active"), so
+ *    the current status is checked first: reactivated items lose their resolvedAt instead, and
+ *    aren't expired again for another {@code max-age-days}.
+ *
+ * Scans page through their query with a cursor, so already-stamped items waiting for archival never
+ * hide newer ones; the write budget per step is {@code MAX_BATCHES_PER_RUN} batches.
+ */
+@Component
+public class ItemLifecycleJob {
+    private static final Logger log = LoggerFactory.getLogger(ItemLifecycleJob.class);
+
+    // Firestore batches hold 500 writes and archiving costs two per item
+    private static final int BATCH_SIZE = 250;
+    private static final int MAX_BATCHES_PER_RUN = 20;
+    private static final int MAX_WRITES_PER_RUN = MAX_BATCHES_PER_RUN * BATCH_SIZE;
+
+    private final FirestoreTestRepository repo;
+    private final TextPrefilterService prefilter;
+    private final long maxAgeDays;
+    private final long archiveAfterDays;
+
+    public ItemLifecycleJob(FirestoreTestRepository repo,
+                            TextPrefilterService prefilter,
+                            @Value("${app.lifecycle.max-age-days:90}") long maxAgeDays,
+                            @Value("${app.lifecycle.archive-after-days:7}") long archiveAfterDays) {
+        this.repo = repo;
+        this.prefilter = prefilter;
+        this.maxAgeDays = maxAgeDays;
+        this.archiveAfterDays = archiveAfterDays;
+    }
+
+    @Scheduled(cron = "${app.lifecycle.cron:0 30 3 * * *}")
+    public void run() {
+        try {
+            int claimed = stampClosed("claimed");
+            int expired = expireStale();
+            int archived = archiveResolved();
+            log.info("Lifecycle: {} claimed stamped, {} expired, {} archived", claimed, expired, archived);
+        } catch (Exception e) {
+            log.error("Item lifecycle run failed", e);
+        }
+    }
+
+    private int stampClosed(String status) throws Exception {
+        int total = 0;
+        String afterId = null;
+        while (total < MAX_WRITES_PER_RUN) {
+            List<Map<String, Object>> page = repo.findItemsWithStatus(status, afterId, BATCH_SIZE);
+            List<String> ids = new ArrayList<>();
+            for (Map<String, Object> item : page) {
+                if (item.get("resolvedAt") == null) ids.add(String.valueOf(item.get("id")));
+            }
+            total += resolve(ids, null, status);
+            if (page.size() < BATCH_SIZE) break;
+            afterId = String.valueOf(page.get(page.size() - 1).get("id"));
+        }
+        return total;
+    }
+
+    private int expireStale() throws Exception {
+        if (maxAgeDays <= 0) return 0;
+        Timestamp cutoff = daysAgo(maxAgeDays);
+        int total = 0;
+        Timestamp afterTs = null;
+        String afterId = null;
+        while (total < MAX_WRITES_PER_RUN) {
+            List<Map<String, Object>> page = repo.findItemsPostedBefore(cutoff, afterTs, afterId, BATCH_SIZE);
+            List<String> active = new ArrayList<>();
+            List<String> inactive = new ArrayList<>();
+            for (Map<String, Object> item : page) {
+                if (item.get("resolvedAt") != null) continue; // waiting for archival
+                Timestamp reopened = (Timestamp) item.get("reopenedAt");
+                if (reopened != null && reopened.compareTo(cutoff) > 0) continue;
+                String id = String.valueOf(item.get("id"));
+                (FirestoreTestRepository.isActive(item.get("status")) ? active : inactive).add(id);
+            }
+            total += resolve(active, "resolved", "expired");
+            total += resolve(inactive, null, "expired");
+            if (page.size() < BATCH_SIZE) break;
+            Map<String, Object> last = page.get(page.size() - 1);
+            afterTs = (Timestamp) last.get("timestamp");
+            afterId = String.valueOf(last.get("id"));
+        }
+        return total;
+    }
+
+    private int resolve(List<String> ids, String status, String reason) throws Exception {
+        if (ids.isEmpty()) return 0;
+        repo.markResolved(ids, status, reason);
+        ids.forEach(prefilter::evict);
+        return ids.size();
+    }
+
+    // Every item of a page is either archived or reopened, so each page drops out of the query
+    private int archiveResolved() throws Exception {
+        Timestamp cutoff = daysAgo(archiveAfterDays);
+        int total = 0;
+        for (int i = 0; i < MAX_BATCHES_PER_RUN; i++) {
+            List<Map<String, Object>> page = repo.findItemsResolvedBefore(cutoff, BATCH_SIZE);
+            if (page.isEmpty()) break;
+            List<Map<String, Object>> closed = new ArrayList<>();
+            List<String> reactivated = new ArrayList<>();
+            for (Map<String, Object> item : page) {
+                if (FirestoreTestRepository.isActive(item.get("status"))) {
+                    reactivated.add(String.valueOf(item.get("id")));
+                } else {
+                    closed.add(item);
+                }
+            }
+            if (!reactivated.isEmpty()) {
+                repo.reopenItems(reactivated);
+                log.info("Lifecycle: {} items were set active again; not archived", reactivated.size());
+            }
+            if (!closed.isEmpty()) {
+                repo.archiveItems(closed);
+                for (Map<String, Object> item : closed) prefilter.evict(String.valueOf(item.get("id")));
+                total += closed.size();
+            }
+            if (page.size() < BATCH_SIZE) break;
+        }
+        return total;
+    }
+
+    private static Timestamp daysAgo(long days) {
+        long millis = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days);
+        return Timestamp.ofTimeMicroseconds(millis * 1000);
+    }
+}
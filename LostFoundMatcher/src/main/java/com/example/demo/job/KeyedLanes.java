@@ -0,0 +1,167 @@
+package com.example.demo.job;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed set of single-threaded lanes with bounded queues. Tasks with the same key always run on
+ * the same lane, so they execute in submission order while different keys run in parallel.
+ *
+ * When a lane's queue is full the overflow policy applies: BLOCK waits up to the configured timeout
+ * (pushing back on the submitter) and then drops; DROP rejects immediately. Dropped tasks are counted.
+ *
+ * A task that will never run, because it was dropped, submitted after shutdown or still queued when
+ * {@link #shutdown} gave up waiting, has its discard callback run instead, so callers can undo
+ * whatever they recorded before handing it off.
+ */
+public final class KeyedLanes {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyedLanes.class);
+
+    public enum OverflowPolicy { BLOCK, DROP }
+
+    private final String name;
+    private final ThreadPoolExecutor[] lanes;
+    private final OverflowPolicy policy;
+    private final long blockTimeoutMillis;
+    private final AtomicLong dropped = new AtomicLong();
+
+    public KeyedLanes(String name, int laneCount, int capacityPerLane, OverflowPolicy policy, long blockTimeoutMillis) {
+        this.name = name;
+        this.policy = policy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        this.lanes = new ThreadPoolExecutor[Math.max(1, laneCount)];
+        for (int i = 0; i < lanes.length; i++) {
+            String threadName = lanes.length == 1 ? name : name + "-" + i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, capacityPerLane)),
+                    r -> new Thread(r, threadName));
+            // tasks are offered straight to the queue, so the worker must already be running
+            lanes[i].prestartCoreThread();
+        }
+    }
+
+    // A queued task and what to do if it never runs
+    private final class Task implements Runnable {
+        private final Runnable task;
+        private final Runnable onDiscard;
+
+        Task(Runnable task, Runnable onDiscard) {
+            this.task = task;
+            this.onDiscard = onDiscard;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("{} task failed", name, e);
+            }
+        }
+
+        // Runs with the interrupt flag cleared: a submitter interrupted out of a blocking offer (e.g. by
+        // shutdown) must still be able to do blocking cleanup
+        void discard() {
+            if (onDiscard == null) return;
+            boolean interrupted = Thread.interrupted();
+            try {
+                onDiscard.run();
+            } catch (Exception e) {
+                log.error("{} discard callback failed", name, e);
+            } finally {
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Queues the task on the key's lane. Returns false if it was dropped by the overflow policy or
+     * because the lanes are shut down.
+     */
+    public boolean submit(String key, Runnable task) {
+        return submit(key, task, null);
+    }
+
+    /**
+     * Like {@link #submit(String, Runnable)}, running {@code onDiscard} if the task is dropped now or
+     * discarded at shutdown.
+     */
+    public boolean submit(String key, Runnable task, Runnable onDiscard) {
+        ThreadPoolExecutor lane = lanes[Math.floorMod(key == null ? 0 : key.hashCode(), lanes.length)];
+        Task queued = new Task(task, onDiscard);
+        // tasks go straight to the queue, which would take them even after the worker has exited
+        boolean accepted = !lane.isShutdown() && offer(lane, queued);
+        if (accepted && lane.isShutdown() && lane.getQueue().remove(queued)) accepted = false;
+        if (!accepted) {
+            long n = dropped.incrementAndGet();
+            log.warn("{} lane full or stopped, dropped task for key {} ({} dropped so far)", name, key, n);
+            queued.discard();
+        }
+        return accepted;
+    }
+
+    private boolean offer(ThreadPoolExecutor lane, Task task) {
+        try {
+            return policy == OverflowPolicy.BLOCK
+                    ? lane.getQueue().offer(task, blockTimeoutMillis, TimeUnit.MILLISECONDS)
+                    : lane.getQueue().offer(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public int queueDepth() {
+        int depth = 0;
+        for (ThreadPoolExecutor lane : lanes) depth += lane.getQueue().size();
+        return depth;
+    }
+
+    public int maxLaneDepth() {
+        int max = 0;
+        for (ThreadPoolExecutor lane : lanes) max = Math.max(max, lane.getQueue().size());
+        return max;
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    public int laneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * Stops taking tasks and lets the queued ones run for up to {@code timeoutMillis}. Whatever is
+     * still queued then is discarded and running tasks are interrupted. Returns the number discarded.
+     */
+    public int shutdown(long timeoutMillis) {
+        for (ThreadPoolExecutor lane : lanes) lane.shutdown();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            for (ThreadPoolExecutor lane : lanes) {
+                lane.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int discarded = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            for (Runnable r : lane.shutdownNow()) {
+                ((Task) r).discard();
+                discarded++;
+            }
+        }
+        if (discarded > 0) {
+            dropped.addAndGet(discarded);
+            log.warn("{} stopped with {} tasks still queued; discarded", name, discarded);
+        }
+        return discarded;
+    }
+}
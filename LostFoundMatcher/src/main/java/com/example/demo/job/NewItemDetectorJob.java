@@ -1,184 +1,161 @@
 package com.example.demo.job;
 
 import com.example.demo.repo.FirestoreTestRepository;
-import com.example.demo.service.NotificationService;
-import com.example.demo.service.NLPService;
-import com.example.demo.service.ImageMatchService;
+import com.example.demo.service.ItemMatchingService;
+import com.example.demo.service.MatchScoringService;
+import com.example.demo.service.MatchWorkQueue;
 import com.google.cloud.Timestamp;
-import com.google.cloud.firestore.QueryDocumentSnapshot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
 import java.util.Map;
-
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matches newly posted items every two minutes.
+ *
+ * Intake pages through the items collection oldest first from the last intake position, so every new
+ * item is read exactly once no matter how many arrive between runs. Items wait in a
+ * {@link MatchWorkQueue} that lives across runs; each run drains it for at most {@code run-budget-ms},
+ * so under a flood from one station the backlog carries over while high-value items and other
+ * stations keep getting their turns. Intake stops once {@code max-queued} items are waiting; the
+ * rest stays in Firestore after the intake position and is read as the queue drains.
+ *
+ * The persisted watermark only moves up to the newest item that has no older item still queued, so
+ * after a restart intake resumes before anything that was fetched but not yet matched.
+ */
 @Component
 public class NewItemDetectorJob {
     private static final Logger log = LoggerFactory.getLogger(NewItemDetectorJob.class);
     private final FirestoreTestRepository repo;
-    private final NotificationService notificationService;
-    private final NLPService nlpService;
-    private final ImageMatchService imageMatchService;
+    private final ItemMatchingService matcher;
+    private final MatchScoringService scoring;
+    private final long runBudgetNanos;
+    private final int maxQueued;
+
+    static final int FETCH_LIMIT = 50;
+
+    private record Position(Timestamp at, String id) implements Comparable<Position> {
+        @Override
+        public int compareTo(Position o) {
+            int c = at.compareTo(o.at);
+            return c != 0 ? c : id.compareTo(o.id);
+        }
+    }
 
-    private static final double NLP_THRESHOLD = 0.7; // adjust as needed
-    private static final double IMAGE_THRESHOLD = 0.85; // adjust as needed
-    private static final int FETCH_LIMIT = 50;
+    private final MatchWorkQueue queue;
+    // Everything fetched since the persisted watermark, and the part of it not yet matched
+    private final NavigableSet<Position> fetched = new TreeSet<>();
+    private final NavigableSet<Position> pending = new TreeSet<>();
+    private boolean intakeStarted = false;
+    private Timestamp intakeAt;
+    private String intakeId;
 
     public NewItemDetectorJob(FirestoreTestRepository repo,
-                              NotificationService notificationService,
-                              NLPService nlpService,
-                              ImageMatchService imageMatchService) {
+                              ItemMatchingService matcher,
+                              MatchScoringService scoring,
+                              @Value("${app.matcher.station-weights:}") String stationWeights,
+                              @Value("${app.matcher.run-budget-ms:100000}") long runBudgetMillis,
+                              @Value("${app.matcher.max-queued:5000}") int maxQueued) {
         this.repo = repo;
-        this.notificationService = notificationService;
-        this.nlpService = nlpService;
-        this.imageMatchService = imageMatchService;
+        this.matcher = matcher;
+        this.scoring = scoring;
+        this.queue = new MatchWorkQueue(MatchWorkQueue.parseStationWeights(stationWeights));
+        this.runBudgetNanos = TimeUnit.MILLISECONDS.toNanos(runBudgetMillis);
+        this.maxQueued = Math.max(1, maxQueued);
     }
 
     @Scheduled(cron = "0 */2 * * * *")
     public void detectAndMatch() {
         try {
-            Timestamp lastProcessedAt = repo.getWatermark();
-            log.info("Last processed timestamp: {}", lastProcessedAt);
+            if (!intakeStarted) {
+                FirestoreTestRepository.Watermark wm = repo.getWatermark();
+                log.info("Last processed: {}", wm);
+                if (wm != null) {
+                    intakeAt = wm.at();
+                    intakeId = wm.id();
+                }
+                intakeStarted = true;
+            }
 
-            List<Map<String, Object>> newItems = repo.fetchNewItems(lastProcessedAt, FETCH_LIMIT);
-            if (newItems.isEmpty()) {
+            int fresh = intake();
+            if (queue.size() == 0) {
                 log.info("No new items found");
                 return;
             }
-            log.info("Found {} new items", newItems.size());
-
-            Timestamp newestTimestamp = null;
-            String newestId = null;
-
-            for (Map<String, Object> item : newItems) {
-                String newItemId = asString(item.get("id"));
-                String type = asString(item.get("type"));
-                String category = asString(item.get("category"));
-                String title = asString(item.get("title"));
-                String stationOrTrain = asString(item.get("stationOrTrain"));
-                Timestamp ts = (Timestamp) item.get("timestamp");
-                Timestamp date = (Timestamp) item.get("date"); // Firestore Timestamp
-
-                if (type.isBlank() || category.isBlank() || title.isBlank() || stationOrTrain.isBlank() || date == null) {
-                    log.warn("Skipping item {} due to missing required fields", newItemId);
-                    continue;
-                }
-
-                List<QueryDocumentSnapshot> possibleMatches =
-                        repo.findOppositeTypeItems(type, category, title, stationOrTrain, date);
-
-                for (QueryDocumentSnapshot matchDoc : possibleMatches) {
-                    String matchId = matchDoc.getId();
-                    if (matchId.equals(newItemId)) continue;
-
-                    if (repo.isMatchAlreadyStored(newItemId, matchId)) {
-                        log.info("Skipping existing match: {} ↔ {}", newItemId, matchId);
-                        continue;
-                    }
-
-                    try {
-                        Map<String, Object> a = repo.getItemById(newItemId);
-                        Map<String, Object> b = repo.getItemById(matchId);
-                        if (a == null || b == null) {
-                            log.warn("One of the items is missing in Firestore: {} or {}", newItemId, matchId);
-                            continue;
-                        }
-
-                        // ---- DESCRIPTION SIMILARITY ----
-                        String descA = asString(a.get("description"));
-                        String descB = asString(b.get("description"));
-                        if (descA.isBlank() || descB.isBlank()) {
-                            log.info("Skipping {} ↔ {}: missing description(s)", newItemId, matchId);
-                            continue;
-                        }
-
-                        double nlpSimilarity;
-                        try {
-                            nlpSimilarity = nlpService.getSimilarity(descA, descB);
-                        } catch (Exception ex) {
-                            log.error("NLP service failed for {} ↔ {} — skipping. Error: {}", newItemId, matchId, ex.getMessage());
-                            continue;
-                        }
-
-                        if (Double.isNaN(nlpSimilarity) || nlpSimilarity < NLP_THRESHOLD) {
-                            log.info("Skipping {} ↔ {} due to low NLP similarity: {} (threshold {})",
-                                    newItemId, matchId, nlpSimilarity, NLP_THRESHOLD);
-                            continue;
-                        }
-
-                        // ---- IMAGE SIMILARITY ----
-                        String imageA = asString(a.get("photoUrl"));
-                        String imageB = asString(b.get("photoUrl"));
-                        if (imageA.isBlank() || imageB.isBlank()) {
-                            log.info("Skipping {} ↔ {}: missing photoUrl(s)", newItemId, matchId);
-                            continue;
-                        }
-
-                        double imageSimilarity;
-                        try {
-                            imageSimilarity = imageMatchService.getSimilarity(imageA, imageB);
-                        } catch (Exception ex) {
-                            log.error("Image service failed for {} ↔ {} — skipping. Error: {}", newItemId, matchId, ex.getMessage());
-                            continue;
-                        }
-
-                        if (imageSimilarity < IMAGE_THRESHOLD) {
-                            log.info("Skipping {} ↔ {} due to low IMAGE similarity: {} (threshold {})",
-                                    newItemId, matchId, imageSimilarity, IMAGE_THRESHOLD);
-                            continue;
-                        }
-
-                        // ---- SAVE MATCH ----
-                        try {
-                            repo.saveMatch(newItemId, matchId);
-                            log.info("Stored new match: {} ↔ {} with NLP similarity {} and IMAGE similarity {}",
-                                    newItemId, matchId, nlpSimilarity, imageSimilarity);
-                        } catch (Exception e) {
-                            log.error("Failed to save match {} ↔ {}: {}", newItemId, matchId, e.getMessage());
-                            continue;
-                        }
-
-                        // ---- NOTIFICATIONS ----
-                        String ownerA = asString(a.get("postedBy"));
-                        String ownerB = asString(b.get("postedBy"));
-                        String titleA = asString(a.get("title"));
-                        String titleB = asString(b.get("title"));
-
-                        if (!ownerA.isBlank()) {
-                            notificationService.sendToUser(ownerA, "Match found!", "A found item matches your lost post: " + titleA);
-                        } else {
-                            log.warn("Missing postedBy on item {}", newItemId);
-                        }
-
-                        if (!ownerB.isBlank()) {
-                            notificationService.sendToUser(ownerB, "Match found!", "A lost item matches your found post: " + titleB);
-                        } else {
-                            log.warn("Missing postedBy on item {}", matchId);
-                        }
-
-                    } catch (Exception e) {
-                        log.error("Failed to process match {} ↔ {}", newItemId, matchId, e);
-                    }
-                }
-
-                if (ts != null && (newestTimestamp == null || ts.compareTo(newestTimestamp) > 0)) {
-                    newestTimestamp = ts;
-                    newestId = newItemId;
+            log.info("Found {} new items, {} queued", fresh, queue.size());
+
+            // Process high-value categories first and share turns fairly across stations
+            long deadline = System.nanoTime() + runBudgetNanos;
+            Map<String, Object> item;
+            while ((item = queue.poll()) != null) {
+                try {
+                    matcher.matchItem(item);
+                } catch (Exception e) {
+                    // e.g. Firestore unavailable: keep the item and try again next run
+                    queue.add(item);
+                    log.error("Failed to match item {}; retrying next run", asString(item.get("id")), e);
+                    break;
                 }
+                pending.remove(position(item));
+                if (System.nanoTime() - deadline >= 0) break;
             }
+            if (queue.size() > 0) log.info("{} items left queued for the next run", queue.size());
 
-            if (newestTimestamp != null) {
-                repo.updateWatermark(newestTimestamp, newestId);
-                log.info("Updated watermark to timestamp: {}, id: {}", newestTimestamp, newestId);
-            }
+            advanceWatermark();
+            scoring.logPassRates();
 
         } catch (Exception e) {
             log.error("Failed to detect/match new items", e);
         }
     }
 
+    // Reads items after the intake position into the queue until it holds maxQueued; returns how many were read
+    private int intake() throws Exception {
+        int total = 0;
+        while (true) {
+            int limit = Math.min(FETCH_LIMIT, maxQueued - queue.size());
+            if (limit <= 0) {
+                log.info("Match queue full ({} items); pausing intake", queue.size());
+                return total;
+            }
+            List<Map<String, Object>> page = repo.fetchNewItems(intakeAt, intakeId, limit);
+            for (Map<String, Object> item : page) {
+                Position p = position(item);
+                fetched.add(p);
+                pending.add(p);
+                queue.add(item);
+            }
+            total += page.size();
+            if (!page.isEmpty()) {
+                Position last = position(page.get(page.size() - 1));
+                intakeAt = last.at();
+                intakeId = last.id();
+            }
+            if (page.size() < limit) return total;
+        }
+    }
+
+    private void advanceWatermark() throws Exception {
+        Position safe = pending.isEmpty()
+                ? (fetched.isEmpty() ? null : fetched.last())
+                : fetched.lower(pending.first());
+        if (safe == null) return;
+        repo.updateWatermark(safe.at(), safe.id());
+        fetched.headSet(safe, true).clear();
+        log.info("Updated watermark to timestamp: {}, id: {}", safe.at(), safe.id());
+    }
+
+    private Position position(Map<String, Object> item) {
+        return new Position((Timestamp) item.get("timestamp"), asString(item.get("id")));
+    }
+
     private String asString(Object o) {
         return o == null ? "" : String.valueOf(o);
     }
@@ -1,22 +1,34 @@
 package com.example.demo.repo;
 
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
 import com.google.cloud.Timestamp;
 import com.google.cloud.firestore.*;
+import io.grpc.Status;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Repository;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 
 @Repository
 public class FirestoreTestRepository {
 
-    private final Firestore db;
+    // Resolved on first use so the Firebase clients aren't built during context startup
+    private final ObjectProvider<Firestore> dbProvider;
+    private final LocalStateStore state;
 
-    public FirestoreTestRepository(Firestore db) {
-        this.db = db;
+    public FirestoreTestRepository(ObjectProvider<Firestore> dbProvider, LocalStateStore state) {
+        this.dbProvider = dbProvider;
+        this.state = state;
+    }
+
+    private Firestore db() {
+        return dbProvider.getObject();
     }
 
     public void printLatestItems(int limit) throws Exception {
-        Query q = db.collection("items")
+        Query q = db().collection("items")
                 .orderBy("timestamp", Query.Direction.DESCENDING)
                 .limit(limit);
         List<QueryDocumentSnapshot> docs = q.get().get().getDocuments();
@@ -28,12 +40,29 @@ public class FirestoreTestRepository {
         }
     }
 
-    public Timestamp getWatermark() throws Exception {
-        DocumentSnapshot snap = db.collection("system").document("meta").get().get();
+    /**
+     * Position of the newest item the matcher has fully processed; new items are read after it.
+     * {@code id} is null for watermarks written before ids were recorded.
+     */
+    public record Watermark(Timestamp at, String id) {}
+
+    // Firestore stays authoritative; the local copy is only used if system/meta can't be read
+    public Watermark getWatermark() throws Exception {
+        DocumentSnapshot snap;
+        try {
+            snap = db().collection("system").document("meta").get().get();
+        } catch (Exception e) {
+            String local = state.getString("meta:lastProcessedAt");
+            if (local == null) throw e;
+            return new Watermark(Timestamp.parseTimestamp(local), state.getString("meta:lastProcessedId"));
+        }
         if (!snap.exists()) return null;
         Object ts = snap.get("lastProcessedAt");
         if (ts instanceof Timestamp) {
-            return (Timestamp) ts;
+            String id = snap.getString("lastProcessedId");
+            state.putString("meta:lastProcessedAt", ts.toString());
+            if (id != null) state.putString("meta:lastProcessedId", id);
+            return new Watermark((Timestamp) ts, id);
         }
         return null;
     }
@@ -43,26 +72,89 @@ public class FirestoreTestRepository {
         meta.put("lastProcessedAt", timestamp);
         meta.put("lastProcessedId", id);
         meta.put("updatedAt", FieldValue.serverTimestamp());
-        db.collection("system").document("meta").set(meta, SetOptions.merge()).get();
+        db().collection("system").document("meta").set(meta, SetOptions.merge()).get();
+        state.putString("meta:lastProcessedAt", timestamp.toString());
+        state.putString("meta:lastProcessedId", id);
     }
 
-    public List<Map<String, Object>> fetchNewItems(Timestamp lastProcessedAt, int limit) throws Exception {
-        Query query = db.collection("items")
-                .orderBy("timestamp", Query.Direction.DESCENDING)
+    // One page of items after (afterTimestamp, afterId), oldest first; pass the last item of the
+    // previous page to continue. With a null afterId only the timestamp is compared.
+    public List<Map<String, Object>> fetchNewItems(Timestamp afterTimestamp, String afterId, int limit) throws Exception {
+        Query query = db().collection("items")
+                .orderBy("timestamp", Query.Direction.ASCENDING)
+                .orderBy(FieldPath.documentId(), Query.Direction.ASCENDING)
                 .limit(limit);
 
-        if (lastProcessedAt != null) {
-            query = query.whereGreaterThan("timestamp", lastProcessedAt);
+        if (afterTimestamp != null && afterId != null) {
+            query = query.startAfter(afterTimestamp, afterId);
+        } else if (afterTimestamp != null) {
+            query = query.whereGreaterThan("timestamp", afterTimestamp);
         }
+        return toMaps(query.get().get().getDocuments());
+    }
 
-        List<QueryDocumentSnapshot> docs = query.get().get().getDocuments();
-        List<Map<String, Object>> results = new ArrayList<>();
-        for (QueryDocumentSnapshot doc : docs) {
-            Map<String, Object> data = doc.getData();
-            data.put("id", doc.getId());
-            results.add(data);
+    // Oldest and newest item timestamps, or null if there are no items
+    public Timestamp[] getItemTimestampRange() throws Exception {
+        List<QueryDocumentSnapshot> oldest = db().collection("items")
+                .orderBy("timestamp", Query.Direction.ASCENDING)
+                .limit(1).get().get().getDocuments();
+        List<QueryDocumentSnapshot> newest = db().collection("items")
+                .orderBy("timestamp", Query.Direction.DESCENDING)
+                .limit(1).get().get().getDocuments();
+        if (oldest.isEmpty() || newest.isEmpty()) return null;
+        return new Timestamp[]{oldest.get(0).getTimestamp("timestamp"), newest.get(0).getTimestamp("timestamp")};
+    }
+
+    // One page of items with from <= timestamp < to, oldest first; pass the last item of the
+    // previous page as (afterTimestamp, afterId) to continue
+    public List<Map<String, Object>> fetchItemsInRange(
+            Timestamp from,
+            Timestamp to,
+            Timestamp afterTimestamp,
+            String afterId,
+            int limit
+    ) throws Exception {
+        Query query = db().collection("items")
+                .whereGreaterThanOrEqualTo("timestamp", from)
+                .whereLessThan("timestamp", to)
+                .orderBy("timestamp", Query.Direction.ASCENDING)
+                .orderBy(FieldPath.documentId(), Query.Direction.ASCENDING)
+                .limit(limit);
+        if (afterTimestamp != null && afterId != null) {
+            query = query.startAfter(afterTimestamp, afterId);
         }
-        return results;
+
+        return toMaps(query.get().get().getDocuments());
+    }
+
+    // Backfill progress lives in system/backfill: the partition size and the start (millis) of each
+    // completed partition. A checkpoint written with a different partition size is ignored.
+    public Set<Long> getBackfillCheckpoint(long partitionMillis) throws Exception {
+        DocumentSnapshot snap = db().collection("system").document("backfill").get().get();
+        Set<Long> done = new HashSet<>();
+        if (!snap.exists()) return done;
+        Long storedPartition = snap.getLong("partitionMillis");
+        if (storedPartition == null || storedPartition != partitionMillis) return done;
+        Object completed = snap.get("completed");
+        if (completed instanceof Map<?, ?> m) {
+            for (Object k : m.keySet()) done.add(Long.parseLong(String.valueOf(k)));
+        }
+        return done;
+    }
+
+    public void resetBackfillCheckpoint(long partitionMillis) throws Exception {
+        Map<String, Object> meta = new HashMap<>();
+        meta.put("partitionMillis", partitionMillis);
+        meta.put("completed", new HashMap<String, Object>());
+        meta.put("startedAt", FieldValue.serverTimestamp());
+        db().collection("system").document("backfill").set(meta).get();
+    }
+
+    public void markBackfillPartitionDone(long partitionStartMillis) throws Exception {
+        Map<String, Object> meta = new HashMap<>();
+        meta.put("completed", Map.of(String.valueOf(partitionStartMillis), true));
+        meta.put("updatedAt", FieldValue.serverTimestamp());
+        db().collection("system").document("backfill").set(meta, SetOptions.merge()).get();
     }
 
     // Date is Firestore Timestamp here
@@ -80,29 +172,183 @@ public class FirestoreTestRepository {
         String titleNorm = norm(title);
         String stationNorm = norm(stationOrTrain);
 
-        Query query = db.collection("items")
+        Query query = db().collection("items")
                 .whereEqualTo("type", oppositeType)
                 .whereEqualTo("category_norm", catNorm)
                 .whereEqualTo("title_norm", titleNorm)
                 .whereEqualTo("stationOrTrain_norm", stationNorm)
                 .whereEqualTo("date", date);
 
-        return query.get().get().getDocuments();
+        // Claimed/resolved items wait here until the lifecycle job archives them; never match them.
+        // Filtered client-side so legacy docs without a status still count as active.
+        List<QueryDocumentSnapshot> out = new ArrayList<>();
+        for (QueryDocumentSnapshot d : query.get().get().getDocuments()) {
+            if (isActive(d.get("status"))) out.add(d);
+        }
+        return out;
+    }
+
+    public static boolean isActive(Object status) {
+        return status == null || String.valueOf(status).isBlank() || "active".equalsIgnoreCase(String.valueOf(status));
+    }
+
+    // ---- lifecycle ----
+
+    // One page of items posted before the cutoff, oldest first; pass the last item of the previous
+    // page as (afterTimestamp, afterId) to continue
+    public List<Map<String, Object>> findItemsPostedBefore(
+            Timestamp cutoff,
+            Timestamp afterTimestamp,
+            String afterId,
+            int limit
+    ) throws Exception {
+        Query query = db().collection("items")
+                .whereLessThan("timestamp", cutoff)
+                .orderBy("timestamp", Query.Direction.ASCENDING)
+                .orderBy(FieldPath.documentId(), Query.Direction.ASCENDING)
+                .limit(limit);
+        if (afterTimestamp != null && afterId != null) {
+            query = query.startAfter(afterTimestamp, afterId);
+        }
+        return toMaps(query.get().get().getDocuments());
+    }
+
+    // One page of items with the status, by id; pass the last id of the previous page to continue
+    public List<Map<String, Object>> findItemsWithStatus(String status, String afterId, int limit) throws Exception {
+        Query query = db().collection("items")
+                .whereEqualTo("status", status)
+                .orderBy(FieldPath.documentId(), Query.Direction.ASCENDING)
+                .limit(limit);
+        if (afterId != null) {
+            query = query.startAfter(afterId);
+        }
+        return toMaps(query.get().get().getDocuments());
+    }
+
+    // Items resolved before the cutoff; docs without resolvedAt are never returned
+    public List<Map<String, Object>> findItemsResolvedBefore(Timestamp cutoff, int limit) throws Exception {
+        Query query = db().collection("items")
+                .whereLessThan("resolvedAt", cutoff)
+                .orderBy("resolvedAt", Query.Direction.ASCENDING)
+                .limit(limit);
+        return toMaps(query.get().get().getDocuments());
+    }
+
+    // Stamps resolvedAt on the items; status is set too unless null (e.g. keep an admin's "claimed")
+    public void markResolved(List<String> itemIds, String status, String reason) throws Exception {
+        WriteBatch batch = db().batch();
+        for (String id : itemIds) {
+            Map<String, Object> update = new HashMap<>();
+            if (status != null) update.put("status", status);
+            update.put("resolvedAt", FieldValue.serverTimestamp());
+            update.put("resolvedReason", reason);
+            batch.set(db().collection("items").document(id), update, SetOptions.merge());
+        }
+        batch.commit().get();
     }
 
+    // Clears resolvedAt on items whose owner set them active again, and stamps reopenedAt
+    public void reopenItems(List<String> itemIds) throws Exception {
+        WriteBatch batch = db().batch();
+        for (String id : itemIds) {
+            Map<String, Object> update = new HashMap<>();
+            update.put("resolvedAt", FieldValue.delete());
+            update.put("resolvedReason", FieldValue.delete());
+            update.put("reopenedAt", FieldValue.serverTimestamp());
+            batch.update(db().collection("items").document(id), update);
+        }
+        batch.commit().get();
+    }
+
+    // Copies each item to items_archive and deletes it from items, atomically per batch.
+    // Two writes per item, so callers must keep batches at or below 250 items.
+    // The items' cached scores and match markers are dropped from the local state store too.
+    public void archiveItems(List<Map<String, Object>> items) throws Exception {
+        WriteBatch batch = db().batch();
+        Set<String> ids = new HashSet<>();
+        for (Map<String, Object> item : items) {
+            String id = String.valueOf(item.get("id"));
+            ids.add(id);
+            Map<String, Object> data = new HashMap<>(item);
+            data.remove("id");
+            data.put("archivedAt", FieldValue.serverTimestamp());
+            batch.set(db().collection("items_archive").document(id), data);
+            batch.delete(db().collection("items").document(id));
+        }
+        batch.commit().get();
+        state.deleteIf(key -> referencesAny(key, ids));
+    }
+
+    // Per-pair state keys look like "<kind>:<idA>|<idB>[:<inputs>]"
+    private static boolean referencesAny(String key, Set<String> ids) {
+        int start = key.indexOf(':') + 1;
+        int end = key.indexOf(':', start);
+        String pair = key.substring(start, end < 0 ? key.length() : end);
+        int bar = pair.indexOf('|');
+        return bar > 0 && (ids.contains(pair.substring(0, bar)) || ids.contains(pair.substring(bar + 1)));
+    }
+
+    private static List<Map<String, Object>> toMaps(List<QueryDocumentSnapshot> docs) {
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (QueryDocumentSnapshot doc : docs) {
+            Map<String, Object> data = doc.getData();
+            data.put("id", doc.getId());
+            results.add(data);
+        }
+        return results;
+    }
+
+    // Stored matches are remembered locally, so known pairs skip the Firestore query after a restart
     public boolean isMatchAlreadyStored(String item1Id, String item2Id) throws Exception {
-        Query query = db.collection("matches")
+        String key = matchKey(item1Id, item2Id);
+        if (state.contains(key)) return true;
+        Query query = db().collection("matches")
                 .whereIn("item1Id", Arrays.asList(item1Id, item2Id))
                 .whereIn("item2Id", Arrays.asList(item1Id, item2Id));
-        return !query.get().get().isEmpty();
+        boolean stored = !query.get().get().isEmpty();
+        if (stored) state.put(key, new byte[0]);
+        return stored;
     }
 
-    public void saveMatch(String item1Id, String item2Id) throws Exception {
+    // The doc id is derived from the item pair and written with create(), so when the live job and a
+    // backfill race on the same pair exactly one of them stores it. Returns false if it already existed.
+    public boolean saveMatch(String item1Id, String item2Id) throws Exception {
         Map<String, Object> matchDoc = new HashMap<>();
         matchDoc.put("item1Id", item1Id);
         matchDoc.put("item2Id", item2Id);
         matchDoc.put("matchedAt", FieldValue.serverTimestamp());
-        db.collection("matches").add(matchDoc).get();
+        boolean created;
+        try {
+            db().collection("matches").document(matchDocId(item1Id, item2Id)).create(matchDoc).get();
+            created = true;
+        } catch (ExecutionException e) {
+            if (!alreadyExists(e.getCause())) throw e;
+            created = false;
+        }
+        state.put(matchKey(item1Id, item2Id), new byte[0]);
+        return created;
+    }
+
+    private static String matchKey(String a, String b) {
+        return "match:" + pair(a, b, "|");
+    }
+
+    private static String matchDocId(String a, String b) {
+        return pair(a, b, "_");
+    }
+
+    private static String pair(String a, String b, String sep) {
+        return a.compareTo(b) <= 0 ? a + sep + b : b + sep + a;
+    }
+
+    private static boolean alreadyExists(Throwable t) {
+        for (; t != null; t = t.getCause()) {
+            if (t instanceof FirestoreException fe && fe.getStatus() != null
+                    && fe.getStatus().getCode() == Status.Code.ALREADY_EXISTS) return true;
+            if (t instanceof ApiException ae
+                    && ae.getStatusCode().getCode() == StatusCode.Code.ALREADY_EXISTS) return true;
+        }
+        return false;
     }
 
     private String norm(String s) {
@@ -110,7 +356,7 @@ public class FirestoreTestRepository {
     }
     
     public Map<String, Object> getItemById(String itemId) throws Exception {
-        DocumentSnapshot d = db.collection("items").document(itemId).get().get();
+        DocumentSnapshot d = db().collection("items").document(itemId).get().get();
         if (!d.exists()) return null;
         Map<String, Object> data = d.getData();
         if (data == null) data = new HashMap<>();
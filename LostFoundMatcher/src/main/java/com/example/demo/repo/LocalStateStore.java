@@ -0,0 +1,340 @@
+package com.example.demo.repo;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * Embedded, file-backed key-value store for matcher state that should survive restarts
+ * (watermark, stored-match markers, similarity scores).
+ *
+ * Writes are appended to a single log file. Reads go through read-only memory mappings of fixed-size
+ * segments of the log; a segment is mapped once it is full, and the still-growing tail is read with
+ * positional reads, so appends never force a remap. The in-memory index (key -> value position) is
+ * rebuilt on boot by scanning the log, and a torn record at the tail is truncated. Overwritten and
+ * deleted records are reclaimed by periodic compaction once they outweigh the live data; per-item
+ * keys are dropped with {@link #deleteIf} when their items are archived, which keeps live data bounded.
+ *
+ * Record layout: crc32(int) keyLen(int) valLen(int, -1 = delete) key value.
+ * This is a cache: Firestore remains the source of truth, so writes are not fsynced individually.
+ */
+@Repository
+public class LocalStateStore {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalStateStore.class);
+
+    private static final int HEADER = 12;
+    private static final long MIN_COMPACT_BYTES = 1 << 20;
+    private static final long DEFAULT_SEGMENT_BYTES = 1L << 26;
+
+    private final Path dir;
+    private final Path logFile;
+    private final long segmentBytes;
+
+    private FileChannel channel;
+    private FileLock lock;
+    // mappings of the full segments, in order; the tail beyond them is read positionally
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private long size;
+    private long liveBytes;
+    private final Map<String, Entry> index = new HashMap<>();
+
+    private record Entry(long valueOffset, int valueLength, int recordLength) {}
+
+    @Autowired
+    public LocalStateStore(@Value("${app.state-store.dir:}") String dir) {
+        this(dir, DEFAULT_SEGMENT_BYTES);
+    }
+
+    // small segments let tests cover records that straddle a segment boundary
+    LocalStateStore(String dir, long segmentBytes) {
+        this.segmentBytes = segmentBytes;
+        this.dir = (dir == null || dir.isBlank())
+                ? Path.of(System.getProperty("java.io.tmpdir"), "lostfound-state")
+                : Path.of(dir);
+        this.logFile = this.dir.resolve("state.log");
+    }
+
+    @PostConstruct
+    public synchronized void open() {
+        long started = System.nanoTime();
+        try {
+            Files.createDirectories(dir);
+            channel = FileChannel.open(logFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            lock = channel.tryLock();
+            if (lock == null) {
+                // another process owns the directory; run without local state rather than corrupt it
+                log.warn("State store {} is locked by another process; running without local state", logFile);
+                channel.close();
+                channel = null;
+                return;
+            }
+            recover();
+            log.info("State store restored {} keys ({} bytes) in {} ms",
+                    index.size(), size, (System.nanoTime() - started) / 1_000_000);
+        } catch (IOException e) {
+            log.error("Failed to open state store {}; running without local state", logFile, e);
+            channel = null;
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (channel == null) return;
+        try {
+            channel.force(false);
+            if (lock != null) lock.release();
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close state store: {}", e.getMessage());
+        }
+        channel = null;
+        segments.clear();
+    }
+
+    // ---- API ----
+
+    public synchronized byte[] get(String key) {
+        if (channel == null) return null;
+        Entry e = index.get(key);
+        if (e == null) return null;
+        try {
+            byte[] out = new byte[e.valueLength()];
+            read(e.valueOffset(), out);
+            return out;
+        } catch (IOException ex) {
+            log.warn("State store read failed for {}: {}", key, ex.getMessage());
+            return null;
+        }
+    }
+
+    public synchronized void put(String key, byte[] value) {
+        append(key, value);
+    }
+
+    public synchronized void delete(String key) {
+        if (index.containsKey(key)) append(key, null);
+    }
+
+    /**
+     * Deletes every key matching the predicate; returns how many were deleted.
+     */
+    public synchronized int deleteIf(Predicate<String> keyFilter) {
+        List<String> doomed = new ArrayList<>();
+        for (String key : index.keySet()) {
+            if (keyFilter.test(key)) doomed.add(key);
+        }
+        doomed.forEach(this::delete);
+        return doomed.size();
+    }
+
+    public String getString(String key) {
+        byte[] v = get(key);
+        return v == null ? null : new String(v, StandardCharsets.UTF_8);
+    }
+
+    public void putString(String key, String value) {
+        put(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Double getDouble(String key) {
+        byte[] v = get(key);
+        return v == null || v.length != 8 ? null : ByteBuffer.wrap(v).getDouble();
+    }
+
+    public void putDouble(String key, double value) {
+        put(key, ByteBuffer.allocate(8).putDouble(value).array());
+    }
+
+    public boolean contains(String key) {
+        return get(key) != null;
+    }
+
+    // ---- compaction ----
+
+    @Scheduled(fixedDelay = 600_000, initialDelay = 600_000)
+    public synchronized void compactIfNeeded() {
+        if (channel == null) return;
+        long dead = size - liveBytes;
+        if (dead < MIN_COMPACT_BYTES || dead < liveBytes) return;
+        try {
+            compact();
+        } catch (IOException e) {
+            log.error("State store compaction failed", e);
+        }
+    }
+
+    synchronized void compact() throws IOException {
+        long before = size;
+        Path tmp = dir.resolve("state.log.compact");
+        Map<String, Entry> rewritten = new HashMap<>();
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long pos = 0;
+            for (Map.Entry<String, Entry> me : index.entrySet()) {
+                byte[] value = get(me.getKey());
+                ByteBuffer rec = encode(me.getKey(), value);
+                int len = rec.remaining();
+                while (rec.hasRemaining()) out.write(rec);
+                rewritten.put(me.getKey(), new Entry(pos + len - value.length, value.length, len));
+                pos += len;
+            }
+            out.force(true);
+        }
+
+        try {
+            lock.release();
+            channel.close();
+            segments.clear();
+            Files.move(tmp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // Reopen whichever log is in place; if the move failed the old log still matches the index
+            reopen();
+        }
+
+        index.clear();
+        index.putAll(rewritten);
+        size = channel.size();
+        liveBytes = size;
+        log.info("State store compacted {} -> {} bytes ({} keys)", before, size, index.size());
+    }
+
+    private void reopen() throws IOException {
+        try {
+            channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            lock = channel.lock();
+        } catch (IOException e) {
+            channel = null;
+            index.clear();
+            log.error("State store could not be reopened; running without local state", e);
+            throw e;
+        }
+    }
+
+    // ---- log ----
+
+    private void append(String key, byte[] value) {
+        if (channel == null) return;
+        ByteBuffer rec = encode(key, value);
+        int len = rec.remaining();
+        try {
+            long pos = size;
+            while (rec.hasRemaining()) pos += channel.write(rec, pos);
+            Entry old = value == null ? index.remove(key) : index.put(key, new Entry(size + len - value.length, value.length, len));
+            if (old != null) liveBytes -= old.recordLength();
+            if (value != null) liveBytes += len;
+            size = pos;
+        } catch (IOException e) {
+            log.warn("State store write failed for {}: {}", key, e.getMessage());
+        }
+    }
+
+    private static ByteBuffer encode(String key, byte[] value) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        int vlen = value == null ? 0 : value.length;
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + k.length + vlen);
+        buf.putInt(0).putInt(k.length).putInt(value == null ? -1 : value.length).put(k);
+        if (value != null) buf.put(value);
+        buf.putInt(0, crc(buf.array(), 4, buf.capacity() - 4));
+        buf.flip();
+        return buf;
+    }
+
+    private void recover() throws IOException {
+        index.clear();
+        segments.clear();
+        liveBytes = 0;
+        long fileSize = channel.size();
+        size = fileSize;
+        byte[] header = new byte[HEADER];
+        long pos = 0;
+        while (pos + HEADER <= fileSize) {
+            read(pos, header);
+            ByteBuffer h = ByteBuffer.wrap(header);
+            int crc = h.getInt(0);
+            int klen = h.getInt(4);
+            int vlen = h.getInt(8);
+            if (klen < 0 || vlen < -1) break;
+            long len = (long) HEADER + klen + Math.max(vlen, 0);
+            if (len > Integer.MAX_VALUE || pos + len > fileSize) break;
+
+            byte[] rec = new byte[(int) len - 4];
+            read(pos + 4, rec);
+            if (crc(rec, 0, rec.length) != crc) break;
+
+            String key = new String(rec, 8, klen, StandardCharsets.UTF_8);
+            Entry old = vlen < 0 ? index.remove(key) : index.put(key, new Entry(pos + HEADER + klen, vlen, (int) len));
+            if (old != null) liveBytes -= old.recordLength();
+            if (vlen >= 0) liveBytes += len;
+            pos += len;
+        }
+        if (pos < fileSize) {
+            log.warn("State store: discarding {} bytes of torn/corrupt tail", fileSize - pos);
+            channel.truncate(pos);
+            segments.clear();
+        }
+        size = pos;
+    }
+
+    // Copies dst.length bytes starting at pos, from the mapped segments or, past them, the file tail
+    private void read(long pos, byte[] dst) throws IOException {
+        int done = 0;
+        while (done < dst.length) {
+            long at = pos + done;
+            int seg = (int) (at / segmentBytes);
+            MappedByteBuffer mapped = segment(seg);
+            if (mapped == null) {
+                ByteBuffer tail = ByteBuffer.wrap(dst, done, dst.length - done);
+                while (tail.hasRemaining()) {
+                    int n = channel.read(tail, pos + tail.position());
+                    if (n < 0) throw new IOException("State store read past end of log at " + (pos + tail.position()));
+                }
+                return;
+            }
+            int off = (int) (at - (long) seg * segmentBytes);
+            int n = Math.min(dst.length - done, (int) segmentBytes - off);
+            mapped.get(off, dst, done, n);
+            done += n;
+        }
+    }
+
+    // Mapping of a full segment, or null if the segment is still the growing tail
+    private MappedByteBuffer segment(int seg) throws IOException {
+        if (seg < segments.size()) return segments.get(seg);
+        if ((long) (seg + 1) * segmentBytes > size) return null;
+        while (segments.size() <= seg) {
+            long start = (long) segments.size() * segmentBytes;
+            segments.add(channel.map(FileChannel.MapMode.READ_ONLY, start, segmentBytes));
+        }
+        return segments.get(seg);
+    }
+
+    private static int crc(byte[] b, int off, int len) {
+        CRC32 c = new CRC32();
+        c.update(b, off, len);
+        return (int) c.getValue();
+    }
+}
@@ -8,6 +8,7 @@ import com.google.firebase.messaging.AndroidNotification;
 import com.google.firebase.messaging.FirebaseMessaging;
 import com.google.firebase.messaging.MulticastMessage;
 import com.google.firebase.messaging.Notification;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
@@ -22,18 +23,24 @@ import java.util.concurrent.TimeUnit;
 @Service
 public class ChatNotificationService {
 
-    private final FirebaseMessaging fcm;
-    private final DatabaseReference usersRef;
+    // Resolved on first send so the Firebase clients aren't built during context startup
+    private final ObjectProvider<FirebaseMessaging> fcm;
+    private final ObjectProvider<FirebaseDatabase> firebaseDatabase;
 
-    public ChatNotificationService(FirebaseMessaging firebaseMessaging, FirebaseDatabase firebaseDatabase) {
+    public ChatNotificationService(ObjectProvider<FirebaseMessaging> firebaseMessaging,
+                                   ObjectProvider<FirebaseDatabase> firebaseDatabase) {
         this.fcm = firebaseMessaging;
-        this.usersRef = firebaseDatabase.getReference("users");
+        this.firebaseDatabase = firebaseDatabase;
+    }
+
+    private DatabaseReference usersRef() {
+        return firebaseDatabase.getObject().getReference("users");
     }
 
     private Set<String> getAllTokensBlocking(String uid) {
         try {
             CompletableFuture<Set<String>> fut = new CompletableFuture<>();
-            usersRef.child(uid).addListenerForSingleValueEvent(new com.google.firebase.database.ValueEventListener() {
+            usersRef().child(uid).addListenerForSingleValueEvent(new com.google.firebase.database.ValueEventListener() {
                 @Override
                 public void onDataChange(DataSnapshot snap) {
                     Set<String> tokens = new HashSet<>();
@@ -87,7 +94,7 @@ public class ChatNotificationService {
                 .build();
 
         try {
-            var resp = fcm.sendEachForMulticast(msg);
+            var resp = fcm.getObject().sendEachForMulticast(msg);
             System.out.println("Chat FCM sent: success=" + resp.getSuccessCount() + " failure=" + resp.getFailureCount());
             // Optional: prune invalid tokens by inspecting resp.getResponses()
         } catch (Exception e) {
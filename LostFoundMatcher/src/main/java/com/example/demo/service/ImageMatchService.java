@@ -1,9 +1,12 @@
 package com.example.demo.service;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.http.*;
 
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -14,6 +17,15 @@ public class ImageMatchService {
     // Make sure this matches your Flask image service
     private final String IMAGE_URL = "http://127.0.0.1:5001/image_similarity";
 
+    private final PhotoCacheService photoCache;
+    private final RateLimiter rateLimiter;
+
+    public ImageMatchService(PhotoCacheService photoCache,
+                             @Value("${app.scoring.image-max-rps:5}") double maxRequestsPerSecond) {
+        this.photoCache = photoCache;
+        this.rateLimiter = new RateLimiter(maxRequestsPerSecond);
+    }
+
     public double getSimilarity(String imgUrl1, String imgUrl2) {
         try {
             HttpHeaders headers = new HttpHeaders();
@@ -23,8 +35,23 @@ public class ImageMatchService {
             request.put("img1", imgUrl1);
             request.put("img2", imgUrl2);
 
+            // Prefer the locally cached thumbnails so the image service doesn't re-download full-size
+            // photos; fall back to the URLs if either photo couldn't be cached
+            PhotoCacheService.Photo p1 = photoCache.get(imgUrl1);
+            PhotoCacheService.Photo p2 = photoCache.get(imgUrl2);
+            if (p1 != null && p2 != null) {
+                // Only byte-identical thumbnails skip the model; equal perceptual hashes are not
+                // proof of the same photo
+                if (Arrays.equals(p1.thumbnail(), p2.thumbnail())) {
+                    return 1.0;
+                }
+                request.put("img1_b64", Base64.getEncoder().encodeToString(p1.thumbnail()));
+                request.put("img2_b64", Base64.getEncoder().encodeToString(p2.thumbnail()));
+            }
+
             HttpEntity<Map<String, String>> entity = new HttpEntity<>(request, headers);
 
+            rateLimiter.acquire();
             ResponseEntity<Map> response = restTemplate.postForEntity(IMAGE_URL, entity, Map.class);
 
             if (response.getBody().containsKey("similarity")) {
@@ -0,0 +1,134 @@
+package com.example.demo.service;
+
+import com.example.demo.repo.FirestoreTestRepository;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Matches a single item against its opposite-type candidates: skips pairs already stored, runs the
+ * scoring cascade, saves new matches and notifies both owners. Shared by the live detector job and
+ * the historical backfill, which may run at the same time; saving is idempotent per pair and only
+ * the caller that actually creates the match doc sends notifications.
+ */
+@Service
+public class ItemMatchingService {
+    private static final Logger log = LoggerFactory.getLogger(ItemMatchingService.class);
+    private final FirestoreTestRepository repo;
+    private final NotificationService notificationService;
+    private final MatchScoringService scoring;
+    private final ReadModelService readModel;
+
+    public ItemMatchingService(FirestoreTestRepository repo,
+                               NotificationService notificationService,
+                               MatchScoringService scoring,
+                               ReadModelService readModel) {
+        this.repo = repo;
+        this.notificationService = notificationService;
+        this.scoring = scoring;
+        this.readModel = readModel;
+    }
+
+    /**
+     * Returns the number of new matches stored, or -1 if the item lacks the fields needed to match.
+     */
+    public int matchItem(Map<String, Object> item) throws Exception {
+        int stored = 0;
+        String newItemId = asString(item.get("id"));
+        String type = asString(item.get("type"));
+        String category = asString(item.get("category"));
+        String title = asString(item.get("title"));
+        String stationOrTrain = asString(item.get("stationOrTrain"));
+        Timestamp date = (Timestamp) item.get("date"); // Firestore Timestamp
+
+        if (type.isBlank() || category.isBlank() || title.isBlank() || stationOrTrain.isBlank() || date == null) {
+            log.warn("Skipping item {} due to missing required fields", newItemId);
+            return -1;
+        }
+        if (!FirestoreTestRepository.isActive(item.get("status"))) {
+            log.info("Skipping item {}: no longer active", newItemId);
+            return 0;
+        }
+
+        List<QueryDocumentSnapshot> possibleMatches =
+                repo.findOppositeTypeItems(type, category, title, stationOrTrain, date);
+
+        for (QueryDocumentSnapshot matchDoc : possibleMatches) {
+            String matchId = matchDoc.getId();
+            if (matchId.equals(newItemId)) continue;
+
+            if (repo.isMatchAlreadyStored(newItemId, matchId)) {
+                log.info("Skipping existing match: {} ↔ {}", newItemId, matchId);
+                continue;
+            }
+
+            try {
+                Map<String, Object> a = repo.getItemById(newItemId);
+                Map<String, Object> b = repo.getItemById(matchId);
+                if (a == null || b == null) {
+                    log.warn("One of the items is missing in Firestore: {} or {}", newItemId, matchId);
+                    continue;
+                }
+
+                MatchScoringService.Result score = scoring.score(newItemId, a, matchId, b);
+                if (!score.matched()) {
+                    if (score.error()) {
+                        log.error("Skipping {} ↔ {}: {}", newItemId, matchId, score.reason());
+                    } else {
+                        log.info("Skipping {} ↔ {}: {}", newItemId, matchId, score.reason());
+                    }
+                    continue;
+                }
+                double nlpSimilarity = score.nlpSimilarity();
+                double imageSimilarity = score.imageSimilarity();
+
+                // ---- SAVE MATCH ----
+                try {
+                    if (!repo.saveMatch(newItemId, matchId)) {
+                        // another run (e.g. a backfill next to the live job) stored and announced it first
+                        log.info("Skipping existing match: {} ↔ {}", newItemId, matchId);
+                        continue;
+                    }
+                    readModel.onMatchSaved(newItemId, matchId);
+                    log.info("Stored new match: {} ↔ {} with NLP similarity {} and IMAGE similarity {}",
+                            newItemId, matchId, nlpSimilarity, imageSimilarity);
+                    stored++;
+                } catch (Exception e) {
+                    log.error("Failed to save match {} ↔ {}: {}", newItemId, matchId, e.getMessage());
+                    continue;
+                }
+
+                // ---- NOTIFICATIONS ----
+                String ownerA = asString(a.get("postedBy"));
+                String ownerB = asString(b.get("postedBy"));
+                String titleA = asString(a.get("title"));
+                String titleB = asString(b.get("title"));
+
+                if (!ownerA.isBlank()) {
+                    notificationService.sendToUser(ownerA, "Match found!", "A found item matches your lost post: " + titleA);
+                } else {
+                    log.warn("Missing postedBy on item {}", newItemId);
+                }
+
+                if (!ownerB.isBlank()) {
+                    notificationService.sendToUser(ownerB, "Match found!", "A lost item matches your found post: " + titleB);
+                } else {
+                    log.warn("Missing postedBy on item {}", matchId);
+                }
+
+            } catch (Exception e) {
+                log.error("Failed to process match {} ↔ {}", newItemId, matchId, e);
+            }
+        }
+        return stored;
+    }
+
+    private String asString(Object o) {
+        return o == null ? "" : String.valueOf(o);
+    }
+}
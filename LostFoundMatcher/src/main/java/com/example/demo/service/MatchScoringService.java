@@ -0,0 +1,159 @@
+package com.example.demo.service;
+
+import com.example.demo.repo.LocalStateStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Staged scoring cascade for a candidate pair: local trigram pre-filter -> remote NLP -> remote image.
+ * Each stage only sees pairs that passed the previous one, so the expensive calls are reserved for
+ * plausible matches. Per-stage pass counts are kept so the cascade can be tuned from the logs.
+ */
+@Service
+public class MatchScoringService {
+
+    private static final Logger log = LoggerFactory.getLogger(MatchScoringService.class);
+
+    // Lexical overlap is only a rough proxy for semantic similarity, so keep this permissive
+    public static final double PREFILTER_THRESHOLD = 0.10; // adjust as needed
+    public static final double NLP_THRESHOLD = 0.7; // adjust as needed
+    public static final double IMAGE_THRESHOLD = 0.85; // adjust as needed
+
+    private final TextPrefilterService prefilter;
+    private final NLPService nlpService;
+    private final ImageMatchService imageMatchService;
+    private final LocalStateStore state;
+
+    private final Stage prefilterStage = new Stage("prefilter");
+    private final Stage nlpStage = new Stage("nlp");
+    private final Stage imageStage = new Stage("image");
+
+    public MatchScoringService(TextPrefilterService prefilter,
+                               NLPService nlpService,
+                               ImageMatchService imageMatchService,
+                               LocalStateStore state) {
+        this.prefilter = prefilter;
+        this.nlpService = nlpService;
+        this.imageMatchService = imageMatchService;
+        this.state = state;
+    }
+
+    public Result score(String idA, Map<String, Object> a, String idB, Map<String, Object> b) {
+        // ---- DESCRIPTION SIMILARITY ----
+        String descA = asString(a.get("description"));
+        String descB = asString(b.get("description"));
+        if (descA.isBlank() || descB.isBlank()) {
+            return Result.rejected("missing description(s)");
+        }
+
+        prefilterStage.entered.incrementAndGet();
+        double textSimilarity = prefilter.similarity(idA, descA, idB, descB);
+        if (textSimilarity < PREFILTER_THRESHOLD) {
+            return Result.rejected(String.format("low TEXT similarity: %.3f (threshold %s)", textSimilarity, PREFILTER_THRESHOLD));
+        }
+        prefilterStage.passed.incrementAndGet();
+
+        nlpStage.entered.incrementAndGet();
+        // Scores are persisted keyed by the pair and the exact inputs, so they survive restarts and
+        // are recomputed only when a description or photo changes
+        String nlpKey = scoreKey("nlp", idA, descA, idB, descB);
+        Double cachedNlp = state.getDouble(nlpKey);
+        double nlpSimilarity;
+        if (cachedNlp != null) {
+            nlpSimilarity = cachedNlp;
+        } else {
+            try {
+                nlpSimilarity = nlpService.getSimilarity(descA, descB);
+            } catch (Exception ex) {
+                return Result.failed("NLP service failed: " + ex.getMessage());
+            }
+            state.putDouble(nlpKey, nlpSimilarity);
+        }
+        if (Double.isNaN(nlpSimilarity) || nlpSimilarity < NLP_THRESHOLD) {
+            return Result.rejected(String.format("low NLP similarity: %s (threshold %s)", nlpSimilarity, NLP_THRESHOLD));
+        }
+        nlpStage.passed.incrementAndGet();
+
+        // ---- IMAGE SIMILARITY ----
+        String imageA = asString(a.get("photoUrl"));
+        String imageB = asString(b.get("photoUrl"));
+        if (imageA.isBlank() || imageB.isBlank()) {
+            return Result.rejected("missing photoUrl(s)");
+        }
+
+        imageStage.entered.incrementAndGet();
+        String imageKey = scoreKey("img", idA, imageA, idB, imageB);
+        Double cachedImage = state.getDouble(imageKey);
+        double imageSimilarity;
+        if (cachedImage != null) {
+            imageSimilarity = cachedImage;
+        } else {
+            try {
+                imageSimilarity = imageMatchService.getSimilarity(imageA, imageB);
+            } catch (Exception ex) {
+                return Result.failed("Image service failed: " + ex.getMessage());
+            }
+            // 0.0 is ImageMatchService's fallback for a failed call; don't persist it
+            if (imageSimilarity != 0.0) state.putDouble(imageKey, imageSimilarity);
+        }
+        if (imageSimilarity < IMAGE_THRESHOLD) {
+            return Result.rejected(String.format("low IMAGE similarity: %s (threshold %s)", imageSimilarity, IMAGE_THRESHOLD));
+        }
+        imageStage.passed.incrementAndGet();
+
+        return new Result(true, null, nlpSimilarity, imageSimilarity, false);
+    }
+
+    public void logPassRates() {
+        log.info("Scoring cascade pass rates: {}, {}, {}", prefilterStage, nlpStage, imageStage);
+    }
+
+    private static String scoreKey(String kind, String idA, String inputA, String idB, String inputB) {
+        if (idA.compareTo(idB) > 0) {
+            return scoreKey(kind, idB, inputB, idA, inputA);
+        }
+        return kind + ":" + idA + "|" + idB + ":" + Integer.toHexString(inputA.hashCode())
+                + "|" + Integer.toHexString(inputB.hashCode());
+    }
+
+    private String asString(Object o) {
+        return o == null ? "" : String.valueOf(o);
+    }
+
+    /**
+     * Outcome of scoring one pair. {@code reason} is set whenever {@code matched} is false;
+     * {@code error} distinguishes a failed remote call from a below-threshold score.
+     */
+    public record Result(boolean matched, String reason, double nlpSimilarity, double imageSimilarity, boolean error) {
+
+        static Result rejected(String reason) {
+            return new Result(false, reason, Double.NaN, Double.NaN, false);
+        }
+
+        static Result failed(String reason) {
+            return new Result(false, reason, Double.NaN, Double.NaN, true);
+        }
+    }
+
+    private static final class Stage {
+        private final String name;
+        private final AtomicLong entered = new AtomicLong();
+        private final AtomicLong passed = new AtomicLong();
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            long in = entered.get();
+            long out = passed.get();
+            double rate = in == 0 ? 0.0 : 100.0 * out / in;
+            return String.format("%s %d/%d (%.1f%%)", name, out, in, rate);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.demo.service;
+
+import com.google.cloud.Timestamp;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Orders new items waiting to be matched so that a flood of low-value reports from one busy station
+ * can't delay everything else. NewItemDetectorJob keeps one instance across runs, so a backlog
+ * carries over while later arrivals still get their turn.
+ *
+ * Items fall into two tiers by category: high-value items (wallets, documents/IDs) go first, but
+ * while both tiers have work every {@code MAX_HIGH_STREAK + 1}th item comes from the normal tier, so
+ * a steady stream of wallets can't starve everything else. Within a tier, stations (by normalized stationOrTrain) take turns in
+ * weighted round-robin, each taking up to its weight in items per turn, and each station's own
+ * queue is ordered by category weight and then age, oldest first.
+ */
+public class MatchWorkQueue {
+
+    // Category weights; anything at or above HIGH_PRIORITY goes in the first tier
+    private static final Map<String, Integer> CATEGORY_WEIGHTS = Map.of(
+            "wallet", 3,
+            "document", 3,
+            "electronics", 2,
+            "jewelry", 2,
+            "bag", 1
+    );
+    private static final int HIGH_PRIORITY = 3;
+    // High-tier items taken in a row before the normal tier gets a turn
+    private static final int MAX_HIGH_STREAK = 3;
+
+    private static final Comparator<Map<String, Object>> WITHIN_STATION =
+            Comparator.<Map<String, Object>>comparingInt(item -> -categoryWeight(item))
+                    .thenComparingLong(MatchWorkQueue::postedAtMillis);
+
+    private final Map<String, Integer> stationWeights;
+    private final Tier high = new Tier();
+    private final Tier normal = new Tier();
+    private int size;
+    private int highStreak;
+
+    /**
+     * @param stationWeights turns per round for specific normalized stations; others get 1
+     */
+    public MatchWorkQueue(Map<String, Integer> stationWeights) {
+        this.stationWeights = stationWeights;
+    }
+
+    public void add(Map<String, Object> item) {
+        (categoryWeight(item) >= HIGH_PRIORITY ? high : normal).add(stationOf(item), item);
+        size++;
+    }
+
+    /**
+     * Next item to process, or null when the queue is empty.
+     */
+    public Map<String, Object> poll() {
+        Map<String, Object> next;
+        if (highStreak >= MAX_HIGH_STREAK && (next = normal.poll()) != null) {
+            highStreak = 0;
+        } else if ((next = high.poll()) != null) {
+            highStreak++;
+        } else {
+            next = normal.poll();
+            highStreak = 0;
+        }
+        if (next != null) size--;
+        return next;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Parses "station=weight,station=weight" (stations are normalized like stationOrTrain_norm).
+     */
+    public static Map<String, Integer> parseStationWeights(String spec) {
+        Map<String, Integer> weights = new HashMap<>();
+        if (spec == null || spec.isBlank()) return weights;
+        for (String part : spec.split(",")) {
+            int eq = part.lastIndexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("Invalid station weight: " + part);
+            weights.put(norm(part.substring(0, eq)), Math.max(1, Integer.parseInt(part.substring(eq + 1).trim())));
+        }
+        return weights;
+    }
+
+    private final class Tier {
+        private final Map<String, PriorityQueue<Map<String, Object>>> byStation = new HashMap<>();
+        private final Deque<String> rotation = new ArrayDeque<>();
+        private int turnsTaken;
+
+        void add(String station, Map<String, Object> item) {
+            PriorityQueue<Map<String, Object>> q = byStation.get(station);
+            if (q == null) {
+                q = new PriorityQueue<>(WITHIN_STATION);
+                byStation.put(station, q);
+                rotation.addLast(station);
+            }
+            q.add(item);
+        }
+
+        Map<String, Object> poll() {
+            String station = rotation.peekFirst();
+            if (station == null) return null;
+            PriorityQueue<Map<String, Object>> q = byStation.get(station);
+            Map<String, Object> item = q.poll();
+            turnsTaken++;
+
+            if (q.isEmpty()) {
+                byStation.remove(station);
+                rotation.pollFirst();
+                turnsTaken = 0;
+            } else if (turnsTaken >= stationWeights.getOrDefault(station, 1)) {
+                rotation.addLast(rotation.pollFirst());
+                turnsTaken = 0;
+            }
+            return item;
+        }
+    }
+
+    private static int categoryWeight(Map<String, Object> item) {
+        return CATEGORY_WEIGHTS.getOrDefault(norm(asString(item.get("category"))), 0);
+    }
+
+    private static String stationOf(Map<String, Object> item) {
+        String station = asString(item.get("stationOrTrain_norm"));
+        return station.isBlank() ? norm(asString(item.get("stationOrTrain"))) : station;
+    }
+
+    private static long postedAtMillis(Map<String, Object> item) {
+        Object ts = item.get("timestamp");
+        if (ts instanceof Timestamp t) return t.getSeconds() * 1000 + t.getNanos() / 1_000_000;
+        return Long.MAX_VALUE;
+    }
+
+    private static String asString(Object o) {
+        return o == null ? "" : String.valueOf(o);
+    }
+
+    private static String norm(String s) {
+        return s == null ? "" : s.trim().toLowerCase();
+    }
+}
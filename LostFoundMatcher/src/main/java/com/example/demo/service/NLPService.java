@@ -1,5 +1,6 @@
 package com.example.demo.service;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.http.ResponseEntity;
@@ -15,8 +16,14 @@ public class NLPService {
 
     private final RestTemplate restTemplate = new RestTemplate();
     private final String NLP_URL = "http://127.0.0.1:5000/similarity";
+    private final RateLimiter rateLimiter;
+
+    public NLPService(@Value("${app.scoring.nlp-max-rps:20}") double maxRequestsPerSecond) {
+        this.rateLimiter = new RateLimiter(maxRequestsPerSecond);
+    }
 
     public double getSimilarity(String desc1, String desc2) {
+        rateLimiter.acquire();
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
 
@@ -7,6 +7,7 @@ import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.messaging.FirebaseMessaging;
 import com.google.firebase.messaging.Message;
 import com.google.firebase.messaging.Notification;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
 
 import java.util.concurrent.CompletableFuture;
@@ -15,19 +16,25 @@ import java.util.concurrent.TimeUnit;
 @Service
 public class NotificationService {
 
-    private final FirebaseMessaging firebaseMessaging;
-    private final DatabaseReference usersRef;
+    // Resolved on first send so the Firebase clients aren't built during context startup
+    private final ObjectProvider<FirebaseMessaging> firebaseMessaging;
+    private final ObjectProvider<FirebaseDatabase> firebaseDatabase;
 
-    public NotificationService(FirebaseMessaging firebaseMessaging, FirebaseDatabase firebaseDatabase) {
+    public NotificationService(ObjectProvider<FirebaseMessaging> firebaseMessaging,
+                               ObjectProvider<FirebaseDatabase> firebaseDatabase) {
         this.firebaseMessaging = firebaseMessaging;
-        this.usersRef = firebaseDatabase.getReference("users");
+        this.firebaseDatabase = firebaseDatabase;
+    }
+
+    private DatabaseReference usersRef() {
+        return firebaseDatabase.getObject().getReference("users");
     }
 
     // Works across Admin SDK versions: use a single-value listener and a CompletableFuture
     private String getUserFcmTokenBlocking(String uid) {
         try { 
             CompletableFuture<String> future = new CompletableFuture<>();
-            usersRef.child(uid).child("fcmToken")
+            usersRef().child(uid).child("fcmToken")
                     .addListenerForSingleValueEvent(new com.google.firebase.database.ValueEventListener() {
                         @Override
                         public void onDataChange(DataSnapshot snapshot) {
@@ -69,7 +76,7 @@ public class NotificationService {
                     .putData("type", "match")
                     .build();
 
-            String id = firebaseMessaging.send(msg);
+            String id = firebaseMessaging.getObject().send(msg);
             System.out.println("Sent FCM to " + uid + " msgId=" + id);
             return true;
         } catch (Exception e) {
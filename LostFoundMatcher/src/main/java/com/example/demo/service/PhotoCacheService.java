@@ -0,0 +1,346 @@
+package com.example.demo.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local, size-capped disk cache of item photos. Each photoUrl is downloaded once and stored as a
+ * downscaled JPEG thumbnail.
+ *
+ * The index is a fixed-size open-addressing hash table (linear probing) in a memory-mapped file, so
+ * it survives restarts without a rebuild. Slot layout (24 bytes): urlKey, lastAccess, size, state.
+ * Removal shifts later entries of the probe run back instead of leaving tombstones, so lookups stay
+ * short however much the cache churns. When the thumbnails exceed {@code maxBytes} the least
+ * recently used entries are evicted.
+ *
+ * Thumbnail bytes are read under the cache lock and handed back directly, so eviction can't pull a
+ * file out from under a caller. The index is locked for the life of the process; a second process
+ * on the same directory (e.g. a backfill next to the live service) runs without the cache.
+ */
+@Service
+public class PhotoCacheService {
+
+    private static final Logger log = LoggerFactory.getLogger(PhotoCacheService.class);
+
+    private static final int SLOTS = 8192;
+    private static final int SLOT_SIZE = 24;
+    private static final int MAX_LIVE = SLOTS * 3 / 4;
+
+    private static final int EMPTY = 0;
+    private static final int LIVE = 1;
+
+    // index.bin held the previous 32-byte slot layout
+    private static final String INDEX_FILE = "index-v2.bin";
+    private static final String LEGACY_INDEX_FILE = "index.bin";
+
+    private final RestTemplate restTemplate = new RestTemplate();
+    private final Path dir;
+    private final long maxBytes;
+    private final int thumbnailSize;
+    // one download per URL key at a time; concurrent misses wait for the first
+    private final Map<Long, CompletableFuture<Photo>> inFlight = new ConcurrentHashMap<>();
+
+    private FileChannel indexChannel;
+    private FileLock indexLock;
+    private MappedByteBuffer index;
+    private boolean disabled = false;
+    private long totalBytes;
+    private int liveCount;
+
+    public PhotoCacheService(@Value("${app.photo-cache.dir:}") String dir,
+                             @Value("${app.photo-cache.max-bytes:268435456}") long maxBytes,
+                             @Value("${app.photo-cache.thumbnail-size:256}") int thumbnailSize) {
+        this.dir = (dir == null || dir.isBlank())
+                ? Path.of(System.getProperty("java.io.tmpdir"), "lostfound-photo-cache")
+                : Path.of(dir);
+        this.maxBytes = maxBytes;
+        this.thumbnailSize = thumbnailSize;
+    }
+
+    /**
+     * A cached photo: the JPEG thumbnail bytes.
+     */
+    public record Photo(byte[] thumbnail) {}
+
+    /**
+     * Returns the cached thumbnail for a photo, downloading it on first use.
+     * Returns null if the photo cannot be downloaded or decoded.
+     */
+    public Photo get(String url) {
+        if (url == null || url.isBlank()) return null;
+        long key = urlKey(url);
+
+        Photo cached = lookup(key);
+        if (cached != null) return cached;
+
+        CompletableFuture<Photo> mine = new CompletableFuture<>();
+        CompletableFuture<Photo> pending = inFlight.putIfAbsent(key, mine);
+        if (pending != null) return pending.join();
+        try {
+            // another caller may have finished the download between our lookup and claiming the key
+            Photo photo = lookup(key);
+            if (photo == null) photo = download(url, key);
+            mine.complete(photo);
+            return photo;
+        } catch (RuntimeException e) {
+            mine.complete(null);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    // Raw photo bytes; overridden in tests
+    byte[] fetch(String url) {
+        return restTemplate.getForObject(url, byte[].class);
+    }
+
+    private synchronized Photo lookup(long key) {
+        if (!ensureOpen()) return null;
+        int slot = find(key);
+        if (slot < 0) return null;
+        try {
+            byte[] bytes = Files.readAllBytes(thumbnailPath(key));
+            index.putLong(slot * SLOT_SIZE + 8, System.currentTimeMillis());
+            return new Photo(bytes);
+        } catch (IOException e) {
+            log.warn("Photo cache: thumbnail {} unreadable, dropping entry: {}", thumbnailPath(key), e.getMessage());
+            remove(slot);
+            return null;
+        }
+    }
+
+    // Download and decode outside the lock; only the file move and index update hold it
+    private Photo download(String url, long key) {
+        try {
+            byte[] raw = fetch(url);
+            if (raw == null) return null;
+            BufferedImage img = ImageIO.read(new ByteArrayInputStream(raw));
+            if (img == null) return null;
+
+            ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+            ImageIO.write(thumbnail(img), "jpg", jpeg);
+            byte[] bytes = jpeg.toByteArray();
+
+            synchronized (this) {
+                if (!ensureOpen()) return new Photo(bytes);
+            }
+            Path tmp = Files.createTempFile(dir, "thumb", ".tmp");
+            Files.write(tmp, bytes);
+            synchronized (this) {
+                Files.move(tmp, thumbnailPath(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                put(key, bytes.length);
+            }
+            return new Photo(bytes);
+        } catch (Exception e) {
+            log.warn("Photo cache: failed to fetch {}: {}", url, e.getMessage());
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (index != null) index.force();
+        if (indexLock != null) indexLock.release();
+        if (indexChannel != null) indexChannel.close();
+        index = null;
+        indexLock = null;
+        indexChannel = null;
+    }
+
+    // ---- index ----
+
+    // Opens and locks the index on first use; false if the cache is unavailable to this process
+    private boolean ensureOpen() {
+        if (index != null) return true;
+        if (disabled) return false;
+        try {
+            Files.createDirectories(dir);
+            indexChannel = FileChannel.open(dir.resolve(INDEX_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                indexLock = indexChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                indexLock = null; // held by another cache instance in this JVM
+            }
+            if (indexLock == null) {
+                log.warn("Photo cache {} is in use by another process; running without the cache", dir);
+                indexChannel.close();
+                indexChannel = null;
+                disabled = true;
+                return false;
+            }
+            dropLegacyCache();
+            index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) SLOTS * SLOT_SIZE);
+            totalBytes = 0;
+            liveCount = 0;
+            for (int slot = 0; slot < SLOTS; slot++) {
+                if (index.getInt(slot * SLOT_SIZE + 20) == LIVE) {
+                    totalBytes += index.getInt(slot * SLOT_SIZE + 16);
+                    liveCount++;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            log.error("Cannot open photo cache index in {}; running without the cache", dir, e);
+            disabled = true;
+            return false;
+        }
+    }
+
+    // Thumbnails indexed by the old layout aren't accounted for in the new index; start over
+    private void dropLegacyCache() throws IOException {
+        Path legacy = dir.resolve(LEGACY_INDEX_FILE);
+        if (!Files.exists(legacy)) return;
+        try (DirectoryStream<Path> thumbs = Files.newDirectoryStream(dir, "*.jpg")) {
+            for (Path p : thumbs) Files.deleteIfExists(p);
+        }
+        Files.delete(legacy);
+        log.info("Photo cache: discarded cache from the previous index format");
+    }
+
+    private int find(long key) {
+        int slot = home(key);
+        for (int i = 0; i < SLOTS; i++) {
+            int base = slot * SLOT_SIZE;
+            if (index.getInt(base + 20) == EMPTY) return -1;
+            if (index.getLong(base) == key) return slot;
+            slot = (slot + 1) % SLOTS;
+        }
+        return -1;
+    }
+
+    private void put(long key, long size) {
+        int existing = find(key);
+        if (existing >= 0) {
+            // same key means same file name: the thumbnail was just replaced, so keep it and update the slot
+            int base = existing * SLOT_SIZE;
+            totalBytes += size - index.getInt(base + 16);
+            index.putLong(base + 8, System.currentTimeMillis());
+            index.putInt(base + 16, (int) size);
+            while (totalBytes > maxBytes && liveCount > 1) evictLeastRecentlyUsed(key);
+            return;
+        }
+        while (liveCount >= MAX_LIVE || (liveCount > 0 && totalBytes + size > maxBytes)) {
+            evictLeastRecentlyUsed(key);
+        }
+
+        int slot = home(key);
+        while (index.getInt(slot * SLOT_SIZE + 20) == LIVE) {
+            slot = (slot + 1) % SLOTS;
+        }
+        int base = slot * SLOT_SIZE;
+        index.putLong(base, key);
+        index.putLong(base + 8, System.currentTimeMillis());
+        index.putInt(base + 16, (int) size);
+        index.putInt(base + 20, LIVE);
+        totalBytes += size;
+        liveCount++;
+    }
+
+    private void evictLeastRecentlyUsed(long keepKey) {
+        int victim = -1;
+        long oldest = Long.MAX_VALUE;
+        for (int slot = 0; slot < SLOTS; slot++) {
+            int base = slot * SLOT_SIZE;
+            if (index.getInt(base + 20) == LIVE && index.getLong(base) != keepKey
+                    && index.getLong(base + 8) < oldest) {
+                oldest = index.getLong(base + 8);
+                victim = slot;
+            }
+        }
+        if (victim >= 0) remove(victim);
+    }
+
+    private void remove(int slot) {
+        int base = slot * SLOT_SIZE;
+        try {
+            Files.deleteIfExists(thumbnailPath(index.getLong(base)));
+        } catch (IOException e) {
+            log.warn("Photo cache: failed to delete thumbnail: {}", e.getMessage());
+        }
+        totalBytes -= index.getInt(base + 16);
+        liveCount--;
+
+        // Backward-shift deletion: move later entries of the probe run into the hole when the hole
+        // lies on their probe path, so every run stays contiguous without tombstones
+        int hole = slot;
+        int next = (slot + 1) % SLOTS;
+        while (index.getInt(next * SLOT_SIZE + 20) == LIVE) {
+            int h = home(index.getLong(next * SLOT_SIZE));
+            boolean movable = hole <= next ? (h <= hole || h > next) : (h <= hole && h > next);
+            if (movable) {
+                for (int off = 0; off < SLOT_SIZE; off += 8) {
+                    index.putLong(hole * SLOT_SIZE + off, index.getLong(next * SLOT_SIZE + off));
+                }
+                hole = next;
+            }
+            next = (next + 1) % SLOTS;
+        }
+        index.putInt(hole * SLOT_SIZE + 20, EMPTY);
+    }
+
+    private static int home(long key) {
+        return (int) ((key ^ (key >>> 32)) & 0x7fffffff) % SLOTS;
+    }
+
+    private Path thumbnailPath(long key) {
+        return dir.resolve(String.format("%016x.jpg", key));
+    }
+
+    // 64-bit FNV-1a of the URL
+    private static long urlKey(String url) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : url.getBytes(StandardCharsets.UTF_8)) {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    // ---- imaging ----
+
+    private BufferedImage thumbnail(BufferedImage src) {
+        double scale = Math.min(1.0, (double) thumbnailSize / Math.max(src.getWidth(), src.getHeight()));
+        int w = Math.max(1, (int) Math.round(src.getWidth() * scale));
+        int h = Math.max(1, (int) Math.round(src.getHeight() * scale));
+        return scaled(src, w, h, BufferedImage.TYPE_INT_RGB);
+    }
+
+    private static BufferedImage scaled(BufferedImage src, int w, int h, int type) {
+        BufferedImage out = new BufferedImage(w, h, type);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(src, 0, 0, w, h, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+}
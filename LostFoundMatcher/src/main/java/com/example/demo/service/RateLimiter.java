@@ -0,0 +1,33 @@
+package com.example.demo.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Minimal blocking rate limiter: hands out evenly spaced permits at {@code permitsPerSecond}.
+ * A non-positive rate means unlimited.
+ */
+public final class RateLimiter {
+
+    private final long intervalNanos;
+    private long nextFreeNanos = System.nanoTime();
+
+    public RateLimiter(double permitsPerSecond) {
+        this.intervalNanos = permitsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond) : 0;
+    }
+
+    public void acquire() {
+        if (intervalNanos == 0) return;
+        long slot;
+        synchronized (this) {
+            slot = Math.max(System.nanoTime(), nextFreeNanos);
+            nextFreeNanos = slot + intervalNanos;
+        }
+        // parkNanos may return early (spuriously or on interrupt); keep waiting until our slot
+        long waitNanos;
+        while ((waitNanos = slot - System.nanoTime()) > 0) {
+            if (Thread.currentThread().isInterrupted()) return;
+            LockSupport.parkNanos(waitNanos);
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.example.demo.service;
+
+import com.example.demo.config.FirebaseStartup;
+import com.example.demo.repo.FirestoreTestRepository;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.QuerySnapshot;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-memory materialized view of items and matches for the read API, so dashboard and client reads
+ * don't hit Firestore. Kept current by snapshot listeners on the items and matches collections
+ * (after one initial load) and by {@link #onMatchSaved} when the matcher stores a match. The listeners
+ * are attached through {@link FirebaseStartup}, which retries until they are and re-attaches them
+ * after a listener error. Until the first snapshot after each attach the view reports not ready, and
+ * that snapshot replaces whatever it no longer contains.
+ *
+ * Item owners ({@code postedBy}) are kept for access checks but never serialized.
+ */
+@Service
+public class ReadModelService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadModelService.class);
+    private static final String NAME = "ReadModelService";
+
+    // Newest first, id as tie-breaker; also the cursor order for pagination
+    private static final Comparator<ItemView> NEWEST_FIRST =
+            Comparator.comparingLong(ItemView::timestampMillis).reversed().thenComparing(ItemView::id);
+
+    private final FirebaseStartup startup;
+    private final ExecutorService exec = Executors.newSingleThreadExecutor();
+    private final List<ListenerRegistration> registrations = new ArrayList<>();
+
+    private final Map<String, ItemView> items = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<ItemView>> openByStation = new ConcurrentHashMap<>();
+    private final Map<String, MatchView> matches = new ConcurrentHashMap<>();
+    private final Map<String, Set<MatchView>> matchesByItem = new ConcurrentHashMap<>();
+
+    private volatile boolean itemsLoaded = false;
+    private volatile boolean matchesLoaded = false;
+
+    public record ItemView(String id, String type, String title, String category, String stationOrTrain,
+                           String status, String photoUrl, @JsonIgnore String postedBy, long timestampMillis) {
+
+        boolean isOpen() {
+            return FirestoreTestRepository.isActive(status);
+        }
+    }
+
+    public record MatchView(String id, String item1Id, String item2Id, long matchedAtMillis) {}
+
+    public record Page<T>(List<T> items, String nextCursor) {}
+
+    public ReadModelService(FirebaseStartup startup) {
+        this.startup = startup;
+        startup.register(NAME, this::start);
+    }
+
+    private void start(Firestore db) {
+        // a retry after a partial attach must not leave a second listener behind
+        registrations.forEach(ListenerRegistration::remove);
+        registrations.clear();
+        // queued on the listener thread, so callbacks from the old listeners can't set the flags back
+        exec.execute(() -> {
+            itemsLoaded = false;
+            matchesLoaded = false;
+        });
+        registrations.add(db.collection("items").addSnapshotListener(exec, (snap, err) -> {
+            if (err != null) {
+                log.error("Read model items listener error", err);
+                itemsLoaded = false;
+                startup.restart(NAME);
+                return;
+            }
+            if (snap == null) return;
+            // the first snapshot after attaching is the whole collection; drop what was deleted meanwhile
+            if (!itemsLoaded) retainItems(itemIds(snap));
+            applyItems(snap);
+            itemsLoaded = true;
+            startup.recovered(NAME);
+        }));
+        registrations.add(db.collection("matches").addSnapshotListener(exec, (snap, err) -> {
+            if (err != null) {
+                log.error("Read model matches listener error", err);
+                matchesLoaded = false;
+                startup.restart(NAME);
+                return;
+            }
+            if (snap == null) return;
+            if (!matchesLoaded) retainMatches(pairIds(snap));
+            applyMatches(snap);
+            matchesLoaded = true;
+            startup.recovered(NAME);
+        }));
+    }
+
+    @PreDestroy
+    public void stop() {
+        registrations.forEach(ListenerRegistration::remove);
+        exec.shutdownNow();
+    }
+
+    public boolean isReady() {
+        return itemsLoaded && matchesLoaded;
+    }
+
+    // ---- queries ----
+
+    public List<MatchView> matchesFor(String itemId) {
+        List<MatchView> out = new ArrayList<>(matchesByItem.getOrDefault(itemId, Set.of()));
+        out.sort(Comparator.comparingLong(MatchView::matchedAtMillis).reversed().thenComparing(MatchView::id));
+        return out;
+    }
+
+    public ItemView item(String itemId) {
+        return items.get(itemId);
+    }
+
+    /**
+     * Open items at a station, newest first. {@code cursor} is the value returned as
+     * {@code nextCursor} by the previous page, or null for the first page.
+     */
+    public Page<ItemView> openItemsAt(String station, String type, String cursor, int limit) {
+        NavigableSet<ItemView> set = openByStation.get(norm(station));
+        if (set == null) return new Page<>(List.of(), null);
+
+        NavigableSet<ItemView> view = set;
+        ItemView after = decodeCursor(cursor);
+        if (after != null) view = set.tailSet(after, false);
+
+        List<ItemView> out = new ArrayList<>(limit);
+        ItemView last = null;
+        for (ItemView it : view) {
+            if (type != null && !type.isBlank() && !type.equalsIgnoreCase(it.type())) continue;
+            if (out.size() == limit) {
+                return new Page<>(out, encodeCursor(last));
+            }
+            out.add(it);
+            last = it;
+        }
+        return new Page<>(out, null);
+    }
+
+    // ---- incremental maintenance ----
+
+    /**
+     * Lets the matcher publish a match as soon as it is saved, ahead of the snapshot listener.
+     * Matches are keyed by item pair, so the listener's copy later replaces this one.
+     */
+    public void onMatchSaved(String item1Id, String item2Id) {
+        addMatch(new MatchView(pairId(item1Id, item2Id), item1Id, item2Id, System.currentTimeMillis()));
+    }
+
+    private void applyItems(QuerySnapshot snap) {
+        for (DocumentChange dc : snap.getDocumentChanges()) {
+            DocumentSnapshot d = dc.getDocument();
+            if (dc.getType() == DocumentChange.Type.REMOVED) {
+                removeItem(d.getId());
+            } else {
+                putItem(toItem(d));
+            }
+        }
+    }
+
+    private void applyMatches(QuerySnapshot snap) {
+        for (DocumentChange dc : snap.getDocumentChanges()) {
+            DocumentSnapshot d = dc.getDocument();
+            String a = d.getString("item1Id");
+            String b = d.getString("item2Id");
+            if (a == null || b == null) continue;
+            if (dc.getType() == DocumentChange.Type.REMOVED) {
+                removeMatch(pairId(a, b));
+            } else {
+                Timestamp at = d.getTimestamp("matchedAt");
+                addMatch(new MatchView(pairId(a, b), a, b, at == null ? System.currentTimeMillis() : millis(at)));
+            }
+        }
+    }
+
+    synchronized void putItem(ItemView item) {
+        ItemView old = items.put(item.id(), item);
+        if (old != null) unindex(old);
+        if (item.isOpen()) {
+            openByStation.computeIfAbsent(norm(item.stationOrTrain()), k -> new ConcurrentSkipListSet<>(NEWEST_FIRST))
+                    .add(item);
+        }
+    }
+
+    synchronized void removeItem(String id) {
+        ItemView old = items.remove(id);
+        if (old != null) unindex(old);
+    }
+
+    private void unindex(ItemView old) {
+        NavigableSet<ItemView> set = openByStation.get(norm(old.stationOrTrain()));
+        if (set != null) set.remove(old);
+    }
+
+    synchronized void addMatch(MatchView m) {
+        MatchView old = matches.put(m.id(), m);
+        if (old != null && old.equals(m)) return;
+        if (old != null) {
+            matchesByItem.getOrDefault(old.item1Id(), Set.of()).remove(old);
+            matchesByItem.getOrDefault(old.item2Id(), Set.of()).remove(old);
+        }
+        matchesByItem.computeIfAbsent(m.item1Id(), k -> ConcurrentHashMap.newKeySet()).add(m);
+        matchesByItem.computeIfAbsent(m.item2Id(), k -> ConcurrentHashMap.newKeySet()).add(m);
+    }
+
+    synchronized void retainItems(Set<String> ids) {
+        for (String id : new ArrayList<>(items.keySet())) {
+            if (!ids.contains(id)) removeItem(id);
+        }
+    }
+
+    synchronized void retainMatches(Set<String> pairIds) {
+        for (String id : new ArrayList<>(matches.keySet())) {
+            if (!pairIds.contains(id)) removeMatch(id);
+        }
+    }
+
+    private synchronized void removeMatch(String id) {
+        MatchView old = matches.remove(id);
+        if (old == null) return;
+        matchesByItem.getOrDefault(old.item1Id(), Set.of()).remove(old);
+        matchesByItem.getOrDefault(old.item2Id(), Set.of()).remove(old);
+    }
+
+    // ---- helpers ----
+
+    private static ItemView toItem(DocumentSnapshot d) {
+        Timestamp ts = d.getTimestamp("timestamp");
+        return new ItemView(d.getId(), d.getString("type"), d.getString("title"), d.getString("category"),
+                d.getString("stationOrTrain"), d.getString("status"), d.getString("photoUrl"),
+                d.getString("postedBy"), ts == null ? 0L : millis(ts));
+    }
+
+    private static Set<String> itemIds(QuerySnapshot snap) {
+        Set<String> ids = new HashSet<>();
+        for (DocumentSnapshot d : snap.getDocuments()) ids.add(d.getId());
+        return ids;
+    }
+
+    private static Set<String> pairIds(QuerySnapshot snap) {
+        Set<String> ids = new HashSet<>();
+        for (DocumentSnapshot d : snap.getDocuments()) {
+            String a = d.getString("item1Id");
+            String b = d.getString("item2Id");
+            if (a != null && b != null) ids.add(pairId(a, b));
+        }
+        return ids;
+    }
+
+    private static String pairId(String a, String b) {
+        return a.compareTo(b) <= 0 ? a + "|" + b : b + "|" + a;
+    }
+
+    private static String encodeCursor(ItemView last) {
+        String raw = last.timestampMillis() + ":" + last.id();
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ItemView decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf(':');
+            long ts = Long.parseLong(raw.substring(0, sep));
+            // only id and timestamp take part in NEWEST_FIRST ordering
+            return new ItemView(raw.substring(sep + 1), null, null, null, null, null, null, null, ts);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    private static long millis(Timestamp ts) {
+        return ts.getSeconds() * 1000 + ts.getNanos() / 1_000_000;
+    }
+
+    private static String norm(String s) {
+        return s == null ? "" : s.trim().toLowerCase();
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.demo.service;
+
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cheap local text similarity used to reject obvious non-matches before calling the NLP service.
+ * Descriptions are reduced to sorted, de-duplicated character-trigram hashes ("signatures") which
+ * are cached per item, so comparing a pair is a single allocation-free merge over two int arrays.
+ */
+@Service
+public class TextPrefilterService {
+
+    private static final int MAX_CACHED_SIGNATURES = 10_000;
+    private static final int[] EMPTY = new int[0];
+
+    // itemId -> signature, access-ordered so the least recently used entry is evicted first
+    private final Map<String, Signature> cache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Signature> eldest) {
+            return size() > MAX_CACHED_SIGNATURES;
+        }
+    };
+
+    /**
+     * Jaccard similarity (0..1) of the trigram sets of two item descriptions.
+     */
+    public double similarity(String idA, String descA, String idB, String descB) {
+        return jaccard(signature(idA, descA), signature(idB, descB));
+    }
+
+    /**
+     * Drops an item's cached signature, e.g. once it is resolved and can no longer be a candidate.
+     */
+    public void evict(String itemId) {
+        synchronized (cache) {
+            cache.remove(itemId);
+        }
+    }
+
+    int[] signature(String itemId, String description) {
+        String text = description == null ? "" : description;
+        if (itemId == null || itemId.isBlank()) return trigrams(text);
+
+        int textHash = text.hashCode();
+        synchronized (cache) {
+            Signature cached = cache.get(itemId);
+            if (cached != null && cached.textHash == textHash) return cached.trigrams;
+        }
+        int[] sig = trigrams(text);
+        synchronized (cache) {
+            cache.put(itemId, new Signature(textHash, sig));
+        }
+        return sig;
+    }
+
+    static int[] trigrams(String text) {
+        String s = normalize(text);
+        if (s.isEmpty()) return EMPTY;
+        // pad so short words still produce at least one trigram
+        s = " " + s + " ";
+        if (s.length() < 3) return EMPTY;
+
+        int[] out = new int[s.length() - 2];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (s.charAt(i) * 31 + s.charAt(i + 1)) * 31 + s.charAt(i + 2);
+        }
+        Arrays.sort(out);
+
+        int n = 1;
+        for (int i = 1; i < out.length; i++) {
+            if (out[i] != out[n - 1]) out[n++] = out[i];
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    static double jaccard(int[] a, int[] b) {
+        if (a.length == 0 || b.length == 0) return 0.0;
+        int i = 0, j = 0, common = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return (double) common / (a.length + b.length - common);
+    }
+
+    // lower-case, keep letters/digits, collapse everything else to single spaces
+    private static String normalize(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean space = true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(c);
+                space = false;
+            } else if (!space) {
+                sb.append(' ');
+                space = true;
+            }
+        }
+        int len = sb.length();
+        if (len > 0 && sb.charAt(len - 1) == ' ') sb.setLength(len - 1);
+        return sb.toString();
+    }
+
+    private record Signature(int textHash, int[] trigrams) {}
+}
@@ -0,0 +1,44 @@
+package com.example.demo.web;
+
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseToken;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Verifies the Firebase ID token sent as {@code Authorization: Bearer <token>}, the same token the
+ * app's Firestore reads are authorized with. Staff are users with the admin portal's "role" custom
+ * claim set to "admin" or "mod".
+ */
+@Component
+public class CallerAuth {
+
+    public record Caller(String uid, boolean staff) {}
+
+    private final ObjectProvider<FirebaseApp> appProvider;
+
+    public CallerAuth(ObjectProvider<FirebaseApp> appProvider) {
+        this.appProvider = appProvider;
+    }
+
+    /**
+     * Returns the verified caller, or throws 401 if the header is missing or the token is invalid.
+     */
+    public Caller verify(String authorization) {
+        if (authorization == null || !authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Missing bearer token");
+        }
+        try {
+            FirebaseToken token = FirebaseAuth.getInstance(appProvider.getObject())
+                    .verifyIdToken(authorization.substring(7).trim());
+            Object role = token.getClaims().get("role");
+            return new Caller(token.getUid(), "admin".equals(role) || "mod".equals(role));
+        } catch (FirebaseAuthException | IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid ID token");
+        }
+    }
+}
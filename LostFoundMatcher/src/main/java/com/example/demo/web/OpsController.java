@@ -0,0 +1,49 @@
+package com.example.demo.web;
+
+import com.example.demo.config.FirebaseStartup;
+import com.example.demo.job.ChatMessageListener;
+import com.example.demo.service.ReadModelService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Operational gauges for the matcher process.
+ */
+@RestController
+@RequestMapping("/api/ops")
+public class OpsController {
+
+    private final ChatMessageListener chatListener;
+    private final FirebaseStartup startup;
+    private final ReadModelService readModel;
+
+    public OpsController(ChatMessageListener chatListener, FirebaseStartup startup, ReadModelService readModel) {
+        this.chatListener = chatListener;
+        this.startup = startup;
+        this.readModel = readModel;
+    }
+
+    @GetMapping("/chat-queues")
+    public Map<String, Map<String, Number>> chatQueues() {
+        return chatListener.queueStats();
+    }
+
+    /**
+     * Readiness probe: 200 once the Firebase clients are built and every listener is attached; 503
+     * (with the same breakdown) until then. The read model's initial load is reported but doesn't gate
+     * readiness: it takes as long as the collections are big, and the read API answers 503 on its own
+     * until it's done.
+     */
+    @GetMapping("/ready")
+    public ResponseEntity<Map<String, Boolean>> ready() {
+        Map<String, Boolean> status = new LinkedHashMap<>(startup.status());
+        status.put("readModelLoaded", readModel.isReady());
+        return ResponseEntity.status(startup.isReady() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE).body(status);
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.demo.web;
+
+import com.example.demo.service.ReadModelService;
+import com.example.demo.service.ReadModelService.ItemView;
+import com.example.demo.service.ReadModelService.MatchView;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only API served from {@link ReadModelService}'s in-memory view; never queries Firestore.
+ * Until the view has finished its initial load the endpoints answer 503 so clients can fall back to
+ * Firestore.
+ *
+ * Callers authenticate with their Firebase ID token (see {@link CallerAuth}). Any signed-in user may
+ * list a station's open items; an item's matches are visible to its owner and to staff only. Owner
+ * UIDs are never included in responses.
+ *
+ * ETags are a hash of the response body, so they agree across instances behind one URL and survive
+ * restarts; polling dashboards get 304s while nothing they can see changed.
+ */
+@RestController
+@RequestMapping("/api")
+public class ReadApiController {
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private final ReadModelService readModel;
+    private final CallerAuth auth;
+    private final ObjectMapper mapper;
+
+    public ReadApiController(ReadModelService readModel, CallerAuth auth, ObjectMapper mapper) {
+        this.readModel = readModel;
+        this.auth = auth;
+        this.mapper = mapper;
+    }
+
+    @GetMapping("/items/{itemId}/matches")
+    public ResponseEntity<Map<String, Object>> matchesForItem(
+            @PathVariable String itemId,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+            WebRequest request) {
+        if (!readModel.isReady()) return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        CallerAuth.Caller caller = auth.verify(authorization);
+        ItemView item = readModel.item(itemId);
+        if (!caller.staff() && (item == null || !caller.uid().equals(item.postedBy()))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (MatchView m : readModel.matchesFor(itemId)) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("item1Id", m.item1Id());
+            row.put("item2Id", m.item2Id());
+            row.put("matchedAt", m.matchedAtMillis());
+            row.put("otherItem", readModel.item(other(m, itemId)));
+            out.add(row);
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("itemId", itemId);
+        body.put("matches", out);
+        return conditional(body, request);
+    }
+
+    @GetMapping("/stations/{station}/items")
+    public ResponseEntity<ReadModelService.Page<ItemView>> openItemsAtStation(
+            @PathVariable String station,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+            WebRequest request) {
+        if (!readModel.isReady()) return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        auth.verify(authorization);
+
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return conditional(readModel.openItemsAt(station, type, cursor, size), request);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+
+    // 304 if the client's If-None-Match still matches the body's hash, otherwise the body with its ETag
+    private <T> ResponseEntity<T> conditional(T body, WebRequest request) {
+        String etag = etag(body);
+        if (request.checkNotModified(etag)) return null;
+        return ResponseEntity.ok().eTag(etag).body(body);
+    }
+
+    private String etag(Object body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(mapper.writeValueAsBytes(body));
+            return "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Cannot compute ETag", e);
+        }
+    }
+
+    private static String other(MatchView m, String itemId) {
+        return m.item1Id().equals(itemId) ? m.item2Id() : m.item1Id();
+    }
+}
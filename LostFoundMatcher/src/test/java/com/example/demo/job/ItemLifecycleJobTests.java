@@ -0,0 +1,116 @@
+package com.example.demo.job;
+
+import com.example.demo.repo.FirestoreTestRepository;
+import com.example.demo.service.TextPrefilterService;
+import com.google.cloud.Timestamp;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ItemLifecycleJobTests {
+
+	private final FirestoreTestRepository repo = mock(FirestoreTestRepository.class);
+	private final List<Map<String, Object>> resolved = new ArrayList<>();
+	private final List<String> archived = new ArrayList<>();
+	private final List<String> reopened = new ArrayList<>();
+	private final List<String> expired = new ArrayList<>();
+
+	private final ItemLifecycleJob job = new ItemLifecycleJob(repo, mock(TextPrefilterService.class), 90, 7);
+
+	private static Timestamp daysAgo(long days) {
+		return Timestamp.ofTimeMicroseconds((System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days)) * 1000);
+	}
+
+	private static Map<String, Object> item(String id, String status) {
+		Map<String, Object> m = new HashMap<>();
+		m.put("id", id);
+		m.put("status", status);
+		m.put("timestamp", daysAgo(120));
+		return m;
+	}
+
+	@BeforeEach
+	void setUp() throws Exception {
+		// items leave the resolved query once archived or reopened, like the Firestore query
+		when(repo.findItemsResolvedBefore(any(), anyInt())).thenAnswer(inv -> new ArrayList<>(resolved));
+		doAnswer(inv -> {
+			List<Map<String, Object>> items = inv.getArgument(0);
+			for (Map<String, Object> item : items) {
+				archived.add((String) item.get("id"));
+				resolved.removeIf(r -> r.get("id").equals(item.get("id")));
+			}
+			return null;
+		}).when(repo).archiveItems(anyList());
+		doAnswer(inv -> {
+			List<String> ids = inv.getArgument(0);
+			reopened.addAll(ids);
+			resolved.removeIf(r -> ids.contains(r.get("id")));
+			return null;
+		}).when(repo).reopenItems(anyList());
+		doAnswer(inv -> {
+			expired.addAll(inv.getArgument(0));
+			return null;
+		}).when(repo).markResolved(anyList(), any(), eq("expired"));
+		when(repo.findItemsWithStatus(any(), any(), anyInt())).thenReturn(List.of());
+		when(repo.findItemsPostedBefore(any(), any(), any(), anyInt())).thenReturn(List.of());
+	}
+
+	@Test
+	void archivesClosedItemsAndReopensReactivatedOnes() throws Exception {
+		Map<String, Object> claimed = item("claimed", "claimed");
+		Map<String, Object> expiredItem = item("expired", "resolved");
+		// claimed, then switched back to active by the owner
+		Map<String, Object> unclaimed = item("unclaimed", "active");
+		// expired, then edited in the app, which saves "active"
+		Map<String, Object> edited = item("edited", "active");
+		for (Map<String, Object> m : List.of(claimed, expiredItem, unclaimed, edited)) {
+			m.put("resolvedAt", daysAgo(10));
+			resolved.add(m);
+		}
+
+		job.run();
+
+		assertEquals(List.of("claimed", "expired"), archived);
+		assertEquals(List.of("unclaimed", "edited"), reopened);
+	}
+
+	@Test
+	void nothingToReopenWritesNothing() throws Exception {
+		Map<String, Object> claimed = item("claimed", "claimed");
+		claimed.put("resolvedAt", daysAgo(10));
+		resolved.add(claimed);
+
+		job.run();
+
+		assertEquals(List.of("claimed"), archived);
+		verify(repo, never()).reopenItems(anyList());
+	}
+
+	@Test
+	void reopenedItemsAreNotExpiredAgainRightAway() throws Exception {
+		Map<String, Object> recentlyReopened = item("reopened", "active");
+		recentlyReopened.put("reopenedAt", daysAgo(1));
+		Map<String, Object> stale = item("stale", "active");
+		when(repo.findItemsPostedBefore(any(), any(), any(), anyInt())).thenReturn(List.of(recentlyReopened, stale));
+
+		job.run();
+
+		assertEquals(List.of("stale"), expired);
+	}
+}
@@ -0,0 +1,181 @@
+package com.example.demo.job;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyedLanesTests {
+
+	private final List<KeyedLanes> created = new ArrayList<>();
+
+	private KeyedLanes lanes(int count, int capacity, KeyedLanes.OverflowPolicy policy, long timeoutMillis) {
+		KeyedLanes lanes = new KeyedLanes("test", count, capacity, policy, timeoutMillis);
+		created.add(lanes);
+		return lanes;
+	}
+
+	@AfterEach
+	void shutdown() {
+		created.forEach(l -> l.shutdown(0));
+	}
+
+	// Occupies the single lane's worker until the returned latch is released
+	private static CountDownLatch blockWorker(KeyedLanes lanes) throws InterruptedException {
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		assertTrue(lanes.submit("k", () -> {
+			running.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}));
+		assertTrue(running.await(5, TimeUnit.SECONDS));
+		return release;
+	}
+
+	@Test
+	void tasksWithTheSameKeyRunInSubmissionOrder() throws Exception {
+		KeyedLanes lanes = lanes(4, 10_000, KeyedLanes.OverflowPolicy.BLOCK, 5_000);
+		int keys = 10;
+		int perKey = 200;
+		List<List<Integer>> seen = new ArrayList<>();
+		for (int k = 0; k < keys; k++) seen.add(Collections.synchronizedList(new ArrayList<>()));
+		CountDownLatch done = new CountDownLatch(keys * perKey);
+
+		for (int i = 0; i < perKey; i++) {
+			for (int k = 0; k < keys; k++) {
+				List<Integer> out = seen.get(k);
+				int n = i;
+				assertTrue(lanes.submit("conv-" + k, () -> {
+					out.add(n);
+					done.countDown();
+				}));
+			}
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		for (List<Integer> out : seen) {
+			for (int i = 0; i < perKey; i++) assertEquals(i, out.get(i));
+		}
+		assertEquals(0, lanes.dropped());
+	}
+
+	@Test
+	void dropPolicyRejectsWhenTheLaneIsFull() throws Exception {
+		KeyedLanes lanes = lanes(1, 1, KeyedLanes.OverflowPolicy.DROP, 0);
+		CountDownLatch release = blockWorker(lanes);
+
+		assertTrue(lanes.submit("k", () -> {}));
+		assertFalse(lanes.submit("k", () -> {}));
+		assertFalse(lanes.submit("other", () -> {}));
+		assertEquals(1, lanes.queueDepth());
+		assertEquals(1, lanes.maxLaneDepth());
+		assertEquals(2, lanes.dropped());
+		release.countDown();
+	}
+
+	@Test
+	void blockPolicyDropsAfterTheTimeout() throws Exception {
+		KeyedLanes lanes = lanes(1, 1, KeyedLanes.OverflowPolicy.BLOCK, 100);
+		CountDownLatch release = blockWorker(lanes);
+		assertTrue(lanes.submit("k", () -> {}));
+
+		long started = System.nanoTime();
+		assertFalse(lanes.submit("k", () -> {}));
+		assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(100));
+		assertEquals(1, lanes.dropped());
+		release.countDown();
+	}
+
+	@Test
+	void blockPolicyWaitsForRoom() throws Exception {
+		KeyedLanes lanes = lanes(1, 1, KeyedLanes.OverflowPolicy.BLOCK, 5_000);
+		CountDownLatch release = blockWorker(lanes);
+		assertTrue(lanes.submit("k", () -> {}));
+
+		new Thread(() -> {
+			sleep(50);
+			release.countDown();
+		}).start();
+		assertTrue(lanes.submit("k", () -> {}));
+		assertEquals(0, lanes.dropped());
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test
+	void submitAfterShutdownIsRefusedAndDiscarded() {
+		KeyedLanes lanes = lanes(1, 10, KeyedLanes.OverflowPolicy.BLOCK, Long.MAX_VALUE);
+		lanes.shutdown(1_000);
+		AtomicInteger discarded = new AtomicInteger();
+		assertFalse(lanes.submit("k", () -> {}, discarded::incrementAndGet));
+		assertEquals(1, discarded.get());
+	}
+
+	@Test
+	void shutdownLetsQueuedTasksFinish() throws Exception {
+		KeyedLanes lanes = lanes(1, 10, KeyedLanes.OverflowPolicy.BLOCK, 5_000);
+		CountDownLatch release = blockWorker(lanes);
+		AtomicInteger ran = new AtomicInteger();
+		AtomicInteger discarded = new AtomicInteger();
+		for (int i = 0; i < 3; i++) assertTrue(lanes.submit("k", ran::incrementAndGet, discarded::incrementAndGet));
+
+		new Thread(() -> {
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			release.countDown();
+		}).start();
+		assertEquals(0, lanes.shutdown(5_000));
+		assertEquals(3, ran.get());
+		assertEquals(0, discarded.get());
+	}
+
+	@Test
+	void shutdownDiscardsWhatIsStillQueuedAfterTheTimeout() throws Exception {
+		KeyedLanes lanes = lanes(1, 10, KeyedLanes.OverflowPolicy.BLOCK, 5_000);
+		blockWorker(lanes); // never released; shutdown interrupts it
+		AtomicInteger ran = new AtomicInteger();
+		AtomicInteger discarded = new AtomicInteger();
+		for (int i = 0; i < 2; i++) assertTrue(lanes.submit("k", ran::incrementAndGet, discarded::incrementAndGet));
+
+		assertEquals(2, lanes.shutdown(50));
+		assertEquals(0, ran.get());
+		assertEquals(2, discarded.get());
+	}
+
+	@Test
+	void submitterInterruptedWhileBlockedCanStillCleanUp() throws Exception {
+		KeyedLanes lanes = lanes(1, 1, KeyedLanes.OverflowPolicy.BLOCK, Long.MAX_VALUE);
+		blockWorker(lanes);
+		assertTrue(lanes.submit("k", () -> {}));
+
+		CountDownLatch cleanedUp = new CountDownLatch(1);
+		Thread submitter = new Thread(() -> lanes.submit("k", () -> {}, () -> {
+			if (!Thread.currentThread().isInterrupted()) cleanedUp.countDown();
+		}));
+		submitter.start();
+		Thread.sleep(50);
+		submitter.interrupt();
+		assertTrue(cleanedUp.await(5, TimeUnit.SECONDS));
+	}
+}
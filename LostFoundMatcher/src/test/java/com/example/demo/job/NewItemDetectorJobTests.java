@@ -0,0 +1,143 @@
+package com.example.demo.job;
+
+import com.example.demo.repo.FirestoreTestRepository;
+import com.example.demo.service.ItemMatchingService;
+import com.example.demo.service.MatchScoringService;
+import com.google.cloud.Timestamp;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class NewItemDetectorJobTests {
+
+	private final FirestoreTestRepository repo = mock(FirestoreTestRepository.class);
+	private final ItemMatchingService matcher = mock(ItemMatchingService.class);
+	private final List<Map<String, Object>> items = new ArrayList<>();
+	private final List<String> matched = new ArrayList<>();
+	private final List<String> watermarks = new ArrayList<>();
+
+	private static Map<String, Object> item(String id, String station, long seconds) {
+		Map<String, Object> m = new HashMap<>();
+		m.put("id", id);
+		m.put("category", "Other");
+		m.put("stationOrTrain_norm", station);
+		m.put("timestamp", Timestamp.ofTimeSecondsAndNanos(seconds, 0));
+		return m;
+	}
+
+	@BeforeEach
+	void setUp() throws Exception {
+		// serves items oldest first after the (timestamp, id) cursor, like the Firestore query
+		when(repo.fetchNewItems(any(), any(), anyInt())).thenAnswer(inv -> {
+			Timestamp afterAt = inv.getArgument(0);
+			String afterId = inv.getArgument(1);
+			int limit = inv.getArgument(2);
+			List<Map<String, Object>> out = new ArrayList<>();
+			items.stream()
+					.sorted(Comparator.comparing((Map<String, Object> m) -> (Timestamp) m.get("timestamp"))
+							.thenComparing(m -> (String) m.get("id")))
+					.filter(m -> afterAt == null || ((Timestamp) m.get("timestamp")).compareTo(afterAt) > 0
+							|| (((Timestamp) m.get("timestamp")).equals(afterAt) && ((String) m.get("id")).compareTo(afterId) > 0))
+					.limit(limit)
+					.forEach(m -> out.add(new HashMap<>(m)));
+			return out;
+		});
+		doAnswer(inv -> {
+			watermarks.add(inv.getArgument(1));
+			return null;
+		}).when(repo).updateWatermark(any(), any());
+		when(matcher.matchItem(any())).thenAnswer(inv -> {
+			Map<String, Object> item = inv.getArgument(0);
+			matched.add((String) item.get("id"));
+			Thread.sleep(2); // exhausts the 1 ms run budget, so each run matches a single item
+			return 0;
+		});
+	}
+
+	@Test
+	void floodFromOneStationDoesNotStarveAnother() {
+		int flood = NewItemDetectorJob.FETCH_LIMIT * 2 + 20;
+		items.add(item("sealdah-old", "sealdah", 1));
+		for (int i = 0; i < flood; i++) items.add(item(String.format("howrah-%03d", i), "howrah", 10 + i));
+
+		NewItemDetectorJob job = new NewItemDetectorJob(repo, matcher, mock(MatchScoringService.class), "", 1, 5000);
+		job.detectAndMatch();
+		// the older item from the quiet station was read despite the flood, and went first
+		assertEquals(List.of("sealdah-old"), matched);
+
+		job.detectAndMatch();
+		items.add(item("sealdah-new", "sealdah", 10_000));
+		job.detectAndMatch();
+		job.detectAndMatch();
+		assertEquals(List.of("sealdah-old", "howrah-000", "howrah-001", "sealdah-new"), matched);
+
+		// the watermark never passes a flood item that is still queued
+		assertEquals(List.of("sealdah-old", "howrah-000", "howrah-001"), watermarks);
+
+		for (int i = 0; i < flood; i++) job.detectAndMatch();
+		assertEquals(flood + 2, matched.size());
+		assertEquals("sealdah-new", watermarks.get(watermarks.size() - 1));
+	}
+
+	@Test
+	void itemIsRetriedWhenMatchingFails() throws Exception {
+		items.add(item("a", "howrah", 1));
+		items.add(item("b", "howrah", 2));
+		doThrow(new IllegalStateException("Firestore unavailable")).when(matcher).matchItem(any());
+
+		NewItemDetectorJob job = new NewItemDetectorJob(repo, matcher, mock(MatchScoringService.class), "", 60_000, 5000);
+		job.detectAndMatch();
+		assertTrue(watermarks.isEmpty());
+
+		doAnswer(inv -> {
+			Map<String, Object> item = inv.getArgument(0);
+			matched.add((String) item.get("id"));
+			return 0;
+		}).when(matcher).matchItem(any());
+		job.detectAndMatch();
+		assertEquals(List.of("a", "b"), matched);
+		assertEquals(List.of("b"), watermarks);
+	}
+
+	@Test
+	void intakeStopsAtTheQueueCap() throws Exception {
+		for (int i = 0; i < 30; i++) items.add(item(String.format("i%02d", i), "howrah", i + 1));
+		List<String> read = new ArrayList<>();
+		// distinct timestamps, so the timestamp alone is the cursor
+		doAnswer(inv -> {
+			Timestamp afterAt = inv.getArgument(0);
+			int limit = inv.getArgument(2);
+			List<Map<String, Object>> out = new ArrayList<>();
+			for (Map<String, Object> m : items) {
+				if (out.size() == limit) break;
+				if (afterAt == null || ((Timestamp) m.get("timestamp")).compareTo(afterAt) > 0) out.add(new HashMap<>(m));
+			}
+			out.forEach(m -> read.add((String) m.get("id")));
+			return out;
+		}).when(repo).fetchNewItems(any(), any(), anyInt());
+
+		NewItemDetectorJob job = new NewItemDetectorJob(repo, matcher, mock(MatchScoringService.class), "", 1, 10);
+		job.detectAndMatch();
+		assertEquals(10, read.size());
+		assertEquals(List.of("i00"), matched);
+
+		for (int i = 0; i < 29; i++) job.detectAndMatch();
+		assertEquals(30, matched.size());
+		assertEquals(30, read.size());
+		assertEquals("i29", matched.get(29));
+	}
+}
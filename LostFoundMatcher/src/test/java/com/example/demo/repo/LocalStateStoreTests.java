@@ -0,0 +1,123 @@
+package com.example.demo.repo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalStateStoreTests {
+
+	@TempDir
+	Path dir;
+
+	private LocalStateStore open() {
+		LocalStateStore store = new LocalStateStore(dir.toString());
+		store.open();
+		return store;
+	}
+
+	@Test
+	void valuesSurviveRestart() {
+		LocalStateStore store = open();
+		store.putString("meta:lastProcessedAt", "2025-01-01T00:00:00Z");
+		store.putDouble("nlp:a|b:1|2", 0.82);
+		store.put("match:a|b", new byte[0]);
+		store.putDouble("nlp:a|b:1|2", 0.91);
+		store.delete("match:a|b");
+		store.close();
+
+		LocalStateStore reopened = open();
+		assertEquals("2025-01-01T00:00:00Z", reopened.getString("meta:lastProcessedAt"));
+		assertEquals(0.91, reopened.getDouble("nlp:a|b:1|2"));
+		assertFalse(reopened.contains("match:a|b"));
+		reopened.close();
+	}
+
+	@Test
+	void tornTailIsDiscardedOnRecovery() throws Exception {
+		LocalStateStore store = open();
+		store.putString("k1", "v1");
+		store.close();
+
+		Files.write(dir.resolve("state.log"), new byte[]{1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+
+		LocalStateStore reopened = open();
+		assertEquals("v1", reopened.getString("k1"));
+		reopened.putString("k2", "v2");
+		reopened.close();
+
+		LocalStateStore again = open();
+		assertEquals("v1", again.getString("k1"));
+		assertEquals("v2", again.getString("k2"));
+		again.close();
+	}
+
+	@Test
+	void compactionDropsDeadRecordsAndKeepsLiveOnes() throws Exception {
+		LocalStateStore store = open();
+		for (int i = 0; i < 1000; i++) {
+			store.putDouble("score", i);
+			store.putString("tmp" + i, "x");
+			store.delete("tmp" + i);
+		}
+		store.putString("keep", "yes");
+		long before = Files.size(dir.resolve("state.log"));
+
+		store.compact();
+		assertTrue(Files.size(dir.resolve("state.log")) < before);
+		assertEquals(999.0, store.getDouble("score"));
+		store.putString("after", "compaction");
+		store.close();
+
+		LocalStateStore reopened = open();
+		assertEquals(999.0, reopened.getDouble("score"));
+		assertEquals("yes", reopened.getString("keep"));
+		assertEquals("compaction", reopened.getString("after"));
+		assertNull(reopened.get("tmp5"));
+		reopened.close();
+	}
+
+	@Test
+	void recordsStraddlingSegmentsSurviveRestartAndCompaction() throws Exception {
+		// 64-byte segments, so most records cross a segment boundary
+		LocalStateStore store = new LocalStateStore(dir.toString(), 64);
+		store.open();
+		for (int i = 0; i < 200; i++) {
+			store.putString("key" + i, "value-" + i + "-" + "x".repeat(i % 50));
+		}
+		assertEquals("value-7-" + "x".repeat(7), store.getString("key7"));
+		for (int i = 0; i < 200; i += 2) store.delete("key" + i);
+		store.compact();
+		assertEquals("value-199-" + "x".repeat(49), store.getString("key199"));
+		store.close();
+
+		LocalStateStore reopened = new LocalStateStore(dir.toString(), 64);
+		reopened.open();
+		assertNull(reopened.get("key0"));
+		for (int i = 1; i < 200; i += 2) {
+			assertEquals("value-" + i + "-" + "x".repeat(i % 50), reopened.getString("key" + i));
+		}
+		reopened.close();
+	}
+
+	@Test
+	void deleteIfDropsMatchingKeys() {
+		LocalStateStore store = open();
+		store.put("match:a|b", new byte[0]);
+		store.putDouble("nlp:a|c:1|2", 0.9);
+		store.putDouble("nlp:c|d:1|2", 0.8);
+
+		assertEquals(2, store.deleteIf(key -> key.contains("a|")));
+		assertFalse(store.contains("match:a|b"));
+		assertFalse(store.contains("nlp:a|c:1|2"));
+		assertTrue(store.contains("nlp:c|d:1|2"));
+		store.close();
+	}
+}
@@ -0,0 +1,67 @@
+package com.example.demo.service;
+
+import com.google.cloud.Timestamp;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MatchWorkQueueTests {
+
+	private static Map<String, Object> item(String id, String category, String station, long seconds) {
+		Map<String, Object> m = new HashMap<>();
+		m.put("id", id);
+		m.put("category", category);
+		m.put("stationOrTrain_norm", station);
+		m.put("timestamp", Timestamp.ofTimeSecondsAndNanos(seconds, 0));
+		return m;
+	}
+
+	private static List<String> drain(MatchWorkQueue q) {
+		List<String> ids = new ArrayList<>();
+		Map<String, Object> next;
+		while ((next = q.poll()) != null) ids.add((String) next.get("id"));
+		return ids;
+	}
+
+	@Test
+	void highValueCategoriesComeFirst() {
+		MatchWorkQueue q = new MatchWorkQueue(Map.of());
+		q.add(item("bag", "Bag", "howrah", 1));
+		q.add(item("wallet", "Wallet", "howrah", 5));
+		q.add(item("doc", "Document", "sealdah", 9));
+		assertEquals(List.of("wallet", "doc", "bag"), drain(q));
+		assertNull(q.poll());
+	}
+
+	@Test
+	void busyStationDoesNotStarveOthers() {
+		MatchWorkQueue q = new MatchWorkQueue(Map.of());
+		for (int i = 0; i < 5; i++) q.add(item("h" + i, "Other", "howrah", i));
+		q.add(item("s0", "Other", "sealdah", 100));
+		q.add(item("s1", "Other", "sealdah", 101));
+		assertEquals(List.of("h0", "s0", "h1", "s1", "h2", "h3", "h4"), drain(q));
+	}
+
+	@Test
+	void stationWeightsGiveExtraTurns() {
+		MatchWorkQueue q = new MatchWorkQueue(MatchWorkQueue.parseStationWeights("Howrah=2"));
+		for (int i = 0; i < 4; i++) q.add(item("h" + i, "Other", "howrah", i));
+		for (int i = 0; i < 2; i++) q.add(item("s" + i, "Other", "sealdah", i));
+		assertEquals(List.of("h0", "h1", "s0", "h2", "h3", "s1"), drain(q));
+	}
+
+	@Test
+	void normalTierGetsAShareUnderAStreamOfHighValueItems() {
+		MatchWorkQueue q = new MatchWorkQueue(Map.of());
+		for (int i = 0; i < 8; i++) q.add(item("w" + i, "Wallet", "howrah", i));
+		q.add(item("bag", "Bag", "howrah", 0));
+		q.add(item("other", "Other", "howrah", 1));
+		assertEquals(List.of("w0", "w1", "w2", "bag", "w3", "w4", "w5", "other", "w6", "w7"), drain(q));
+	}
+}
@@ -0,0 +1,170 @@
+package com.example.demo.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class PhotoCacheServiceTests {
+
+	@TempDir
+	Path dir;
+
+	// Counts fetches per URL and serves a solid-color PNG instead of hitting the network
+	private static class CountingCache extends PhotoCacheService {
+		final Map<String, AtomicInteger> fetches = new ConcurrentHashMap<>();
+		final int imageSize;
+		volatile CountDownLatch gate;
+
+		CountingCache(Path dir, long maxBytes, int imageSize) {
+			super(dir.toString(), maxBytes, 64);
+			this.imageSize = imageSize;
+		}
+
+		@Override
+		byte[] fetch(String url) {
+			fetches.computeIfAbsent(url, u -> new AtomicInteger()).incrementAndGet();
+			try {
+				if (gate != null) gate.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return png(url.hashCode(), imageSize);
+		}
+
+		int fetched(String url) {
+			AtomicInteger n = fetches.get(url);
+			return n == null ? 0 : n.get();
+		}
+	}
+
+	private static byte[] png(int rgb, int size) {
+		BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = img.createGraphics();
+		g.setColor(new Color(rgb));
+		g.fillRect(0, 0, size, size);
+		g.dispose();
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ImageIO.write(img, "png", out);
+			return out.toByteArray();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Test
+	void hitsSurviveARestart() throws IOException {
+		CountingCache cache = new CountingCache(dir, 1 << 20, 32);
+		byte[] first = cache.get("https://img/a").thumbnail();
+		assertArrayEquals(first, cache.get("https://img/a").thumbnail());
+		cache.close();
+
+		CountingCache reopened = new CountingCache(dir, 1 << 20, 32);
+		assertArrayEquals(first, reopened.get("https://img/a").thumbnail());
+		assertEquals(1, cache.fetched("https://img/a"));
+		assertEquals(0, reopened.fetched("https://img/a"));
+		reopened.close();
+	}
+
+	@Test
+	void evictsTheLeastRecentlyUsedWhenOverBudget() throws Exception {
+		CountingCache probe = new CountingCache(dir.resolve("probe"), 1 << 20, 32);
+		int size = probe.get("https://img/probe").thumbnail().length;
+		probe.close();
+
+		// room for two thumbnails
+		CountingCache cache = new CountingCache(dir, size * 2L + size / 2, 32);
+		cache.get("https://img/a");
+		Thread.sleep(5);
+		cache.get("https://img/b");
+		Thread.sleep(5);
+		cache.get("https://img/a");
+		Thread.sleep(5);
+		cache.get("https://img/c");
+
+		cache.get("https://img/a");
+		cache.get("https://img/c");
+		assertEquals(1, cache.fetched("https://img/a"));
+		assertEquals(1, cache.fetched("https://img/c"));
+		cache.get("https://img/b");
+		assertEquals(2, cache.fetched("https://img/b"));
+		cache.close();
+	}
+
+	@Test
+	void concurrentMissesDownloadOnce() throws Exception {
+		CountingCache cache = new CountingCache(dir, 1 << 20, 32);
+		cache.gate = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<PhotoCacheService.Photo>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) results.add(pool.submit(() -> cache.get("https://img/a")));
+			Thread.sleep(50);
+			cache.gate.countDown();
+			byte[] expected = results.get(0).get(5, TimeUnit.SECONDS).thumbnail();
+			for (Future<PhotoCacheService.Photo> f : results) {
+				assertArrayEquals(expected, f.get(5, TimeUnit.SECONDS).thumbnail());
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		assertEquals(1, cache.fetched("https://img/a"));
+		cache.close();
+	}
+
+	@Test
+	void aSecondInstanceOnTheSameDirectoryRunsUncached() throws IOException {
+		CountingCache owner = new CountingCache(dir, 1 << 20, 32);
+		owner.get("https://img/a");
+
+		CountingCache other = new CountingCache(dir, 1 << 20, 32);
+		assertNotNull(other.get("https://img/a"));
+		assertNotNull(other.get("https://img/a"));
+		assertEquals(2, other.fetched("https://img/a"));
+
+		// the owner's index is untouched
+		owner.get("https://img/a");
+		assertEquals(1, owner.fetched("https://img/a"));
+		other.close();
+		owner.close();
+	}
+
+	@Test
+	void heavyChurnKeepsLookupsCorrect() throws IOException {
+		// more distinct URLs than the index holds live, so entries are evicted and probe runs shift constantly
+		CountingCache cache = new CountingCache(dir, Long.MAX_VALUE, 1);
+		for (int i = 0; i < 7_000; i++) cache.get("https://img/" + i);
+		for (int i = 7_000 - 1000; i < 7_000; i++) cache.get("https://img/" + i);
+		for (int i = 7_000 - 1000; i < 7_000; i++) {
+			assertEquals(1, cache.fetched("https://img/" + i), "refetched " + i);
+		}
+		cache.close();
+
+		CountingCache reopened = new CountingCache(dir, Long.MAX_VALUE, 1);
+		for (int i = 7_000 - 1000; i < 7_000; i++) reopened.get("https://img/" + i);
+		assertEquals(0, reopened.fetches.size());
+		reopened.close();
+	}
+}
@@ -0,0 +1,92 @@
+package com.example.demo.service;
+
+import com.example.demo.config.FirebaseStartup;
+import com.example.demo.service.ReadModelService.ItemView;
+import com.example.demo.service.ReadModelService.Page;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ReadModelServiceTests {
+
+	private final ReadModelService model = new ReadModelService(new FirebaseStartup(null));
+
+	private static ItemView item(String id, String type, String station, String status, long millis) {
+		return new ItemView(id, type, "Wallet", "wallet", station, status, null, "uid-" + id, millis);
+	}
+
+	private static List<String> ids(Page<ItemView> page) {
+		List<String> out = new ArrayList<>();
+		for (ItemView it : page.items()) out.add(it.id());
+		return out;
+	}
+
+	@Test
+	void cursorWalksOpenItemsNewestFirst() {
+		for (int i = 1; i <= 5; i++) model.putItem(item("i" + i, "lost", "Howrah", null, i * 1000L));
+		model.putItem(item("elsewhere", "lost", "Sealdah", null, 9000));
+		model.putItem(item("closed", "lost", "Howrah", "resolved", 8000));
+
+		Page<ItemView> first = model.openItemsAt(" howrah ", null, null, 2);
+		assertEquals(List.of("i5", "i4"), ids(first));
+
+		// a newer item arriving between pages doesn't shift the next page
+		model.putItem(item("i6", "lost", "Howrah", null, 6000));
+		Page<ItemView> second = model.openItemsAt("howrah", null, first.nextCursor(), 2);
+		assertEquals(List.of("i3", "i2"), ids(second));
+
+		Page<ItemView> last = model.openItemsAt("howrah", null, second.nextCursor(), 2);
+		assertEquals(List.of("i1"), ids(last));
+		assertNull(last.nextCursor());
+	}
+
+	@Test
+	void typeFilterAppliesAcrossPages() {
+		model.putItem(item("f1", "found", "Howrah", null, 1000));
+		model.putItem(item("l1", "lost", "Howrah", null, 2000));
+		model.putItem(item("f2", "found", "Howrah", "active", 3000));
+		model.putItem(item("l2", "lost", "Howrah", null, 4000));
+		model.putItem(item("f3", "found", "Howrah", null, 5000));
+
+		Page<ItemView> first = model.openItemsAt("howrah", "FOUND", null, 2);
+		assertEquals(List.of("f3", "f2"), ids(first));
+		Page<ItemView> second = model.openItemsAt("howrah", "found", first.nextCursor(), 2);
+		assertEquals(List.of("f1"), ids(second));
+		assertNull(second.nextCursor());
+	}
+
+	@Test
+	void closingAnItemRemovesItFromItsStation() {
+		model.putItem(item("a", "lost", "Howrah", null, 1000));
+		model.putItem(item("b", "lost", "Howrah", null, 2000));
+		model.putItem(item("a", "lost", "Howrah", "claimed", 1000));
+		model.removeItem("b");
+		assertEquals(List.of(), ids(model.openItemsAt("howrah", null, null, 10)));
+	}
+
+	@Test
+	void malformedCursorIsRejected() {
+		model.putItem(item("a", "lost", "Howrah", null, 1000));
+		assertThrows(IllegalArgumentException.class, () -> model.openItemsAt("howrah", null, "not-a-cursor", 10));
+	}
+
+	@Test
+	void reattachDropsItemsDeletedWhileDetached() {
+		model.putItem(item("kept", "lost", "Howrah", null, 1000));
+		model.putItem(item("gone", "lost", "Howrah", null, 2000));
+		model.onMatchSaved("kept", "gone");
+
+		model.retainItems(Set.of("kept"));
+		model.retainMatches(Set.of());
+
+		assertNull(model.item("gone"));
+		assertEquals(List.of("kept"), ids(model.openItemsAt("howrah", null, null, 10)));
+		assertEquals(List.of(), model.matchesFor("kept"));
+	}
+}
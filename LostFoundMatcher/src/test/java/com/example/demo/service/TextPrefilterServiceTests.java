@@ -0,0 +1,40 @@
+package com.example.demo.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TextPrefilterServiceTests {
+
+	private final TextPrefilterService prefilter = new TextPrefilterService();
+
+	@Test
+	void identicalTextIgnoringCaseAndPunctuationScoresOne() {
+		assertEquals(1.0, prefilter.similarity("a", "Black leather wallet!", "b", "black  leather, WALLET"), 1e-9);
+	}
+
+	@Test
+	void unrelatedTextScoresBelowThreshold() {
+		double s = prefilter.similarity("a", "black leather wallet with id cards", "b", "blue umbrella");
+		assertTrue(s < MatchScoringService.PREFILTER_THRESHOLD, "score was " + s);
+	}
+
+	@Test
+	void relatedTextScoresAboveThreshold() {
+		double s = prefilter.similarity("a", "black leather wallet with id cards", "b", "lost a black wallet, has my ID");
+		assertTrue(s >= MatchScoringService.PREFILTER_THRESHOLD, "score was " + s);
+	}
+
+	@Test
+	void blankTextScoresZero() {
+		assertEquals(0.0, prefilter.similarity("a", "", "b", "wallet"));
+	}
+
+	@Test
+	void cachedSignatureIsRefreshedWhenDescriptionChanges() {
+		assertArrayEquals(TextPrefilterService.trigrams("wallet"), prefilter.signature("a", "wallet"));
+		assertArrayEquals(TextPrefilterService.trigrams("umbrella"), prefilter.signature("a", "umbrella"));
+	}
+}
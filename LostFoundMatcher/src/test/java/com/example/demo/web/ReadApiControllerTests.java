@@ -0,0 +1,99 @@
+package com.example.demo.web;
+
+import com.example.demo.service.ReadModelService;
+import com.example.demo.service.ReadModelService.ItemView;
+import com.example.demo.service.ReadModelService.MatchView;
+import com.example.demo.service.ReadModelService.Page;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReadApiControllerTests {
+
+	private static final ItemView MINE = new ItemView("lost1", "lost", "Wallet", "wallet", "Howrah", null, null, "alice", 1000);
+	private static final ItemView THEIRS = new ItemView("found1", "found", "Wallet", "wallet", "Howrah", null, null, "bob", 2000);
+
+	private final ReadModelService readModel = mock(ReadModelService.class);
+	private final CallerAuth auth = mock(CallerAuth.class);
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@BeforeEach
+	void setUp() {
+		when(readModel.isReady()).thenReturn(true);
+		when(readModel.item("lost1")).thenReturn(MINE);
+		when(readModel.item("found1")).thenReturn(THEIRS);
+		when(readModel.matchesFor("lost1")).thenReturn(List.of(new MatchView("found1|lost1", "lost1", "found1", 3000)));
+		when(auth.verify("Bearer alice")).thenReturn(new CallerAuth.Caller("alice", false));
+		when(auth.verify("Bearer bob")).thenReturn(new CallerAuth.Caller("bob", false));
+		when(auth.verify("Bearer admin")).thenReturn(new CallerAuth.Caller("carol", true));
+		when(auth.verify(null)).thenThrow(new ResponseStatusException(HttpStatus.UNAUTHORIZED));
+	}
+
+	private static ServletWebRequest get(String ifNoneMatch) {
+		MockHttpServletRequest req = new MockHttpServletRequest("GET", "/api/items/lost1/matches");
+		if (ifNoneMatch != null) req.addHeader("If-None-Match", ifNoneMatch);
+		return new ServletWebRequest(req, new MockHttpServletResponse());
+	}
+
+	@Test
+	void etagIsDerivedFromContent() throws Exception {
+		ReadApiController a = new ReadApiController(readModel, auth, mapper);
+		ReadApiController b = new ReadApiController(readModel, auth, mapper);
+
+		ResponseEntity<Map<String, Object>> first = a.matchesForItem("lost1", "Bearer alice", get(null));
+		String etag = first.getHeaders().getETag();
+		// another instance serving the same state agrees, and honours the first one's ETag
+		assertEquals(etag, b.matchesForItem("lost1", "Bearer alice", get(null)).getHeaders().getETag());
+		ServletWebRequest conditional = get(etag);
+		assertNull(b.matchesForItem("lost1", "Bearer alice", conditional));
+		assertEquals(304, conditional.getResponse().getStatus());
+
+		// a change to the embedded counterpart item changes the ETag
+		when(readModel.item("found1")).thenReturn(new ItemView("found1", "found", "Wallet", "wallet", "Howrah",
+				"claimed", null, "bob", 2000));
+		ResponseEntity<Map<String, Object>> changed = a.matchesForItem("lost1", "Bearer alice", get(etag));
+		assertEquals(HttpStatus.OK, changed.getStatusCode());
+		assertNotEquals(etag, changed.getHeaders().getETag());
+		assertFalse(mapper.writeValueAsString(changed.getBody()).contains("bob"));
+	}
+
+	@Test
+	void matchesAreVisibleToOwnerAndStaffOnly() {
+		ReadApiController api = new ReadApiController(readModel, auth, mapper);
+		assertEquals(HttpStatus.OK, api.matchesForItem("lost1", "Bearer alice", get(null)).getStatusCode());
+		assertEquals(HttpStatus.OK, api.matchesForItem("lost1", "Bearer admin", get(null)).getStatusCode());
+		assertEquals(HttpStatus.FORBIDDEN, api.matchesForItem("lost1", "Bearer bob", get(null)).getStatusCode());
+		assertEquals(HttpStatus.FORBIDDEN, api.matchesForItem("unknown", "Bearer bob", get(null)).getStatusCode());
+		assertThrows(ResponseStatusException.class, () -> api.matchesForItem("lost1", null, get(null)));
+	}
+
+	@Test
+	void stationListingHidesOwners() throws Exception {
+		when(readModel.openItemsAt(eq("howrah"), any(), any(), anyInt())).thenReturn(new Page<>(List.of(MINE, THEIRS), null));
+		ReadApiController api = new ReadApiController(readModel, auth, mapper);
+		ResponseEntity<Page<ItemView>> page = api.openItemsAtStation("howrah", null, null, 20, "Bearer bob", get(null));
+		String json = mapper.writeValueAsString(page.getBody());
+		assertFalse(json.contains("postedBy"));
+		assertFalse(json.contains("alice"));
+	}
+}
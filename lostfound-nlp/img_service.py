@@ -3,26 +3,53 @@ from sentence_transformers import SentenceTransformer, util
 from PIL import Image
 import requests
 from io import BytesIO
+from collections import OrderedDict
+import base64
+import hashlib
+import threading
 
 app = Flask(__name__)
 
 # Load CLIP model (for images)
 model = SentenceTransformer("clip-ViT-B-32")
 
+# Embeddings keyed by the SHA-256 of the thumbnail bytes the matcher sends, so a cache hit is
+# always the same image (never just a similar-looking one)
+EMBED_CACHE_SIZE = 2048
+embed_cache = OrderedDict()
+# Flask serves requests on threads; guard every read/reorder/evict of the cache
+embed_cache_lock = threading.Lock()
+
+def embed(data, n):
+    # Prefer the thumbnail sent by the matcher; fall back to downloading the full-size photo
+    b64 = data.get(f"img{n}_b64")
+    if not b64:
+        raw = requests.get(data[f"img{n}"]).content
+        return model.encode(Image.open(BytesIO(raw)).convert("RGB"), convert_to_tensor=True)
+
+    raw = base64.b64decode(b64)
+    key = hashlib.sha256(raw).hexdigest()
+    with embed_cache_lock:
+        emb = embed_cache.get(key)
+        if emb is not None:
+            embed_cache.move_to_end(key)
+            return emb
+    # encode outside the lock so concurrent requests don't serialize on the model
+    emb = model.encode(Image.open(BytesIO(raw)).convert("RGB"), convert_to_tensor=True)
+    with embed_cache_lock:
+        embed_cache[key] = emb
+        if len(embed_cache) > EMBED_CACHE_SIZE:
+            embed_cache.popitem(last=False)
+    return emb
+
 @app.route("/image_similarity", methods=["POST"])
 def image_similarity():
     try:
         data = request.json
-        img_url1 = data["img1"]
-        img_url2 = data["img2"]
-
-        # Download images
-        img1 = Image.open(BytesIO(requests.get(img_url1).content)).convert("RGB")
-        img2 = Image.open(BytesIO(requests.get(img_url2).content)).convert("RGB")
 
-        # Encode into embeddings
-        emb1 = model.encode(img1, convert_to_tensor=True)
-        emb2 = model.encode(img2, convert_to_tensor=True)
+        # Encode into embeddings (cached thumbnails / embeddings when available)
+        emb1 = embed(data, 1)
+        emb2 = embed(data, 2)
 
         # Cosine similarity
         score = util.cos_sim(emb1, emb2).item()